@@ -0,0 +1,60 @@
+package Benchmark;
+
+import DAO.AccountDAO;
+import Model.Account;
+import Service.AccountService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * AccountService.verifyLogin against a seeded H2 database. verifyLoginCached measures the steady state once the
+ * account cache is warm; getAccountByUsernameUncached is the database lookup a cold login pays.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {BenchmarkDatabase.DB_URL_ARG, BenchmarkDatabase.SHARD_URL_ARG})
+public class AccountServiceBenchmark {
+
+    private static final int ACCOUNT_COUNT = 1000;
+
+    private AccountService accountService;
+    private final AccountDAO accountDAO = new AccountDAO();
+
+    @Setup(Level.Trial)
+    public void seed() {
+        BenchmarkDatabase.seed(ACCOUNT_COUNT, 0);
+        accountService = new AccountService();
+    }
+
+    @Benchmark
+    public Account verifyLoginCached() {
+        String username = "user" + (ThreadLocalRandom.current().nextInt(ACCOUNT_COUNT) + 1);
+        return accountService.verifyLogin(username, "password");
+    }
+
+    @Benchmark
+    public Account verifyLoginUnknownUser() {
+        return accountService.verifyLogin("nobody" + ThreadLocalRandom.current().nextInt(ACCOUNT_COUNT), "password");
+    }
+
+    @Benchmark
+    public Account getAccountByUsernameUncached() {
+        String username = "user" + (ThreadLocalRandom.current().nextInt(ACCOUNT_COUNT) + 1);
+        return accountDAO.getAccountByUsername(username);
+    }
+}
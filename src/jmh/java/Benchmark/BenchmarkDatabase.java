@@ -0,0 +1,88 @@
+package Benchmark;
+
+import DAO.MessageDAO;
+import Model.Message;
+import Util.ConnectionUtil;
+import Util.MessageShards;
+import Util.SchemaMigrator;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds a fresh, seeded database for the benchmarks. Benchmarks fork with -Ddb.url and -Ddb.message.shardUrl pointing
+ * under target/, so seeding never touches the databases used by the tests or by a running application. To benchmark
+ * sharded messages, pass the shard settings to the fork, for example -Djmh.args="-jvmArgs -Ddb.message.shards=4".
+ */
+public class BenchmarkDatabase {
+
+    public static final String DB_URL_ARG = "-Ddb.url=jdbc:h2:./target/jmh/db;";
+    public static final String SHARD_URL_ARG = "-Ddb.message.shardUrl=jdbc:h2:./target/jmh/message-shard-%d;";
+
+    private static final int MESSAGE_BATCH_SIZE = 1000;
+
+    /**
+     * Recreates the schema through the migrations and inserts accounts user1..userN (password "password") and
+     * messages spread round-robin across them. Account ids start at 1. Messages are created through MessageDAO, so
+     * they get the ids and shards the application would give them. Must run before anything else in the fork uses
+     * MessageShards, which reads the slot owners only once.
+     * @return the id of every message, in the order created.
+     */
+    public static int[] seed(int accountCount, int messageCount) {
+        try (Connection conn = ConnectionUtil.getConnection()) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("DROP TABLE IF EXISTS follow");
+                stmt.execute("DROP TABLE IF EXISTS message");
+                stmt.execute("DROP TABLE IF EXISTS account");
+                stmt.execute("DROP TABLE IF EXISTS schema_version");
+                stmt.execute("DROP TABLE IF EXISTS message_slot");
+                stmt.execute("DROP SEQUENCE IF EXISTS message_seq");
+            }
+            SchemaMigrator.migrate();
+
+            conn.setAutoCommit(false);
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "INSERT INTO account (username, password) VALUES (?, ?)")) {
+                for (int i = 1; i <= accountCount; i++) {
+                    stmt.setString(1, "user" + i);
+                    stmt.setString(2, "password");
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not seed the benchmark database", e);
+        }
+
+        // The message table is empty now, so MessageShards can start routing; clear what earlier runs left on shards
+        for (int shard : MessageShards.getAllShards()) {
+            try (Connection conn = MessageShards.getConnection(shard); Statement stmt = conn.createStatement()) {
+                stmt.execute("DELETE FROM message");
+            } catch (SQLException e) {
+                throw new IllegalStateException("Could not clear message shard " + shard, e);
+            }
+        }
+
+        int[] messageIds = new int[messageCount];
+        List<Message> batch = new ArrayList<>(MESSAGE_BATCH_SIZE);
+        for (int i = 0; i < messageCount; i++) {
+            batch.add(new Message(i % accountCount + 1, "benchmark message " + i, 1669947792L + i));
+            if (batch.size() == MESSAGE_BATCH_SIZE || i == messageCount - 1) {
+                int first = i + 1 - batch.size();
+                List<Message> created = MessageDAO.createMessages(batch);
+                for (int j = 0; j < created.size(); j++) {
+                    if (created.get(j) == null) {
+                        throw new IllegalStateException("Could not seed benchmark message " + (first + j));
+                    }
+                    messageIds[first + j] = created.get(j).getMessage_id();
+                }
+                batch.clear();
+            }
+        }
+        return messageIds;
+    }
+}
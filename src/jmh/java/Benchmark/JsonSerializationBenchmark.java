@@ -0,0 +1,96 @@
+package Benchmark;
+
+import Model.Account;
+import Model.Message;
+import Util.JsonCodec;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Jackson serialization of Message and Account lists of different sizes, as the list endpoints produce them.
+ * Each operation is measured with a default, reflection-based ObjectMapper and with the shared JsonCodec, and
+ * request-body parsing is measured both with a new ObjectMapper per call (as handlers used to do) and with the
+ * codec's pre-built reader.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonSerializationBenchmark {
+
+    @Param({"1", "100", "10000"})
+    public int size;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private List<Message> messages;
+    private List<Account> accounts;
+
+    private static final String MESSAGE_BODY =
+            "{\"posted_by\":1, \"message_text\": \"hello message\", \"time_posted_epoch\": 1669947792}";
+
+    @Setup(Level.Trial)
+    public void createLists() {
+        messages = new ArrayList<>(size);
+        accounts = new ArrayList<>(size);
+        for (int i = 1; i <= size; i++) {
+            messages.add(new Message(i, i % 100 + 1, "benchmark message " + i, 1669947792L + i));
+            accounts.add(new Account(i, "user" + i, "password"));
+        }
+    }
+
+    @Benchmark
+    public byte[] serializeMessages() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(messages);
+    }
+
+    @Benchmark
+    public byte[] serializeAccounts() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(accounts);
+    }
+
+    @Benchmark
+    public byte[] serializeMessagesCodec() throws JsonProcessingException {
+        return JsonCodec.toJsonBytes(messages);
+    }
+
+    @Benchmark
+    public byte[] serializeAccountsCodec() throws JsonProcessingException {
+        return JsonCodec.toJsonBytes(accounts);
+    }
+
+    @Benchmark
+    public Message parseMessageNewMapperPerCall() throws IOException {
+        return new ObjectMapper().readValue(MESSAGE_BODY, Message.class);
+    }
+
+    @Benchmark
+    public Message parseMessageSharedMapper() throws IOException {
+        return objectMapper.readValue(MESSAGE_BODY, Message.class);
+    }
+
+    @Benchmark
+    public Message parseMessageCodec() throws IOException {
+        return JsonCodec.MESSAGE_READER.readValue(MESSAGE_BODY);
+    }
+}
@@ -0,0 +1,78 @@
+package Benchmark;
+
+import DAO.MessageDAO;
+import Model.Message;
+import Util.PageCursor;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * MessageDAO reads and writes against a seeded H2 database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {BenchmarkDatabase.DB_URL_ARG, BenchmarkDatabase.SHARD_URL_ARG})
+public class MessageDAOBenchmark {
+
+    private static final int ACCOUNT_COUNT = 100;
+
+    @Param({"1000", "100000"})
+    public int messageCount;
+
+    private final MessageDAO messageDAO = new MessageDAO();
+
+    /**
+     * The seeded ids, which only run from 1 to messageCount while messages are not sharded.
+     */
+    private int[] messageIds;
+
+    @Setup(Level.Trial)
+    public void seed() {
+        messageIds = BenchmarkDatabase.seed(ACCOUNT_COUNT, messageCount);
+    }
+
+    @Benchmark
+    public Message getMessageById() {
+        return MessageDAO.getMessageById(messageIds[ThreadLocalRandom.current().nextInt(messageCount)]);
+    }
+
+    @Benchmark
+    public List<Message> getMessagesByAccountId() {
+        return MessageDAO.getMessagesByAccountId(ThreadLocalRandom.current().nextInt(ACCOUNT_COUNT) + 1);
+    }
+
+    @Benchmark
+    public List<Message> getMessagesAfterPage() {
+        PageCursor cursor = PageCursor.after(PageCursor.Order.MESSAGE_ID, 0,
+                messageIds[ThreadLocalRandom.current().nextInt(messageCount)]);
+        return MessageDAO.getMessagesAfter(null, cursor, 100);
+    }
+
+    @Benchmark
+    public List<Message> getAllMessages() {
+        return messageDAO.getAllMessages();
+    }
+
+    @Benchmark
+    public Message createMessage() {
+        int postedBy = ThreadLocalRandom.current().nextInt(ACCOUNT_COUNT) + 1;
+        return MessageDAO.createMessage(new Message(postedBy, "benchmark insert", 1669947792L));
+    }
+}
@@ -0,0 +1,45 @@
+package Controller;
+
+import Util.JsonCodec;
+import io.javalin.json.JsonMapper;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
+
+/**
+ * Plugs the shared JsonCodec into Javalin, so ctx.json() and ctx.bodyAsClass() use the same pre-built readers and
+ * writers, and the hand-written Message and Account serializers, as the rest of the application.
+ */
+public class CodecJsonMapper implements JsonMapper {
+
+    @Override
+    public String toJsonString(Object obj, Type type) {
+        if (obj instanceof String) {
+            return (String) obj; // Like Javalin's own mapper, pass strings through; ctx.json("") sends an empty body
+        }
+        try {
+            return JsonCodec.toJson(obj);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public <T> T fromJsonString(String json, Type targetType) {
+        try {
+            return JsonCodec.fromJson(json, targetType);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public <T> T fromJsonStream(InputStream json, Type targetType) {
+        try {
+            return JsonCodec.readerFor(targetType).readValue(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
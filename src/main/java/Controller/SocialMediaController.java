@@ -1,30 +1,176 @@
 package Controller;
 
 import io.javalin.Javalin;
+import io.javalin.http.ContentType;
 import io.javalin.http.Context;
+import io.javalin.http.ForbiddenResponse;
+import io.javalin.http.Handler;
+import io.javalin.http.HandlerType;
+import io.javalin.http.Header;
+import io.javalin.http.UnauthorizedResponse;
+import io.javalin.util.ConcurrencyUtil;
+import io.javalin.util.LoomUtil;
+import org.eclipse.jetty.server.Request;
 import Model.Account;
 import Model.Message;
+import Model.MessageBatchResult;
 import Service.AccountService;
 import Service.MessageService;
+import Service.TimelineService;
+import Util.Bulkhead;
+import Util.ConcurrencyLimiter;
+import Util.ConnectionPool;
+import Util.ConnectionUtil;
+import Util.JsonCodec;
+import Util.LatencyHistogram;
+import Util.LruCache;
+import Util.MessageShards;
+import Util.Metrics;
+import Util.PasswordHasher;
+import Util.RateLimiter;
+import Util.ResponseCompressor;
+import Util.SessionTokens;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 import DAO.AccountDAO;
+import DAO.MessageBatchWriter;
 import DAO.MessageDAO;
 
 public class SocialMediaController {
+    /**
+     * Page size used when a client continues from a cursor without repeating the limit.
+     */
+    private static final int DEFAULT_PAGE_SIZE = 100;
+
+    /**
+     * Run request handlers on virtual threads instead of Jetty's bounded platform thread pool. Requires a Java 21+
+     * runtime; on older runtimes Javalin silently keeps using platform threads. Enable with -Dserver.virtualThreads.
+     * Leaving it unset keeps Javalin's own setting, which an application embedding this controller may have chosen.
+     */
+    private final boolean virtualThreads = Boolean.getBoolean("server.virtualThreads");
+    /**
+     * With virtual threads there is no thread pool left to bound concurrency, so at most this many requests may run
+     * their handler (and therefore touch the database) at once. Override with -Dserver.maxConcurrentRequests.
+     */
+    private final int maxConcurrentRequests = Integer.getInteger("server.maxConcurrentRequests", 64);
+    /**
+     * How long a request waits for one of those slots before it is answered with 503.
+     * Override with -Dserver.requestQueueTimeoutMillis.
+     */
+    private final long requestQueueTimeoutMillis = Long.getLong("server.requestQueueTimeoutMillis", 10_000L);
+
+    private static final String PROMETHEUS_CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final String REQUEST_TIMER = "metrics.requestTimer";
+    private static final String REQUEST_START = "metrics.requestStart";
+    private static final String COMPRESSED_BODY_KEY = "compression.cacheKey";
+    private static final String AUTHENTICATED_ACCOUNT = "auth.accountId";
+    private static final String REQUEST_SLOT = "limiter.requestSlot";
+
+    /**
+     * A successful login returns a session token in this header. Later requests send it back as
+     * "Authorization: Bearer <token>" to prove which account they act for.
+     */
+    private static final String AUTH_TOKEN_HEADER = "X-Auth-Token";
+    /**
+     * A request carrying this header reads from the primary database rather than a replica, so it sees every write
+     * committed before it, including the client's own from an earlier request.
+     */
+    private static final String READ_YOUR_WRITES_HEADER = "X-Read-Your-Writes";
+    /**
+     * When set with -Dauth.tokens.required, requests that act for an account (creating, editing or deleting
+     * messages, following) are answered with 401 unless they carry a valid token. Off by default so existing clients
+     * keep working.
+     */
+    private final boolean tokensRequired = Boolean.getBoolean("auth.tokens.required");
+    /**
+     * Tokens are valid for -Dauth.token.ttlSeconds (default one hour). Generated signing keys are replaced every
+     * -Dauth.token.rotateSeconds (default one day); -Dauth.token.keys fixes the keys instead, see SessionTokens.
+     */
+    private static final long TOKEN_TTL_MILLIS = Long.getLong("auth.token.ttlSeconds", 3_600L) * 1000;
+    private static final long TOKEN_ROTATE_MILLIS = Long.getLong("auth.token.rotateSeconds", 86_400L) * 1000;
+
+    /**
+     * JSON bodies of at least -Dhttp.compression.minSize bytes (default 1500, about one network packet) are gzipped
+     * at level -Dhttp.compression.level (default 4, which gets most of level 9's saving on JSON for a fraction of the
+     * CPU) when the client accepts it.
+     */
+    private static final ResponseCompressor COMPRESSOR = new ResponseCompressor(
+            Integer.getInteger("http.compression.minSize", 1500), Integer.getInteger("http.compression.level", 4));
+
+    /**
+     * Database work runs off the request threads, on one bulkhead per workload, so that a flood of full listings
+     * cannot starve single-message lookups and logins, and neither can hold up writes. The default thread counts
+     * add up to the default connection pool size. Override with -Dbulkhead.{list,lookup,write}.threads and
+     * -Dbulkhead.{list,lookup,write}.queueSize; a request that finds its bulkhead's queue full gets a 503.
+     */
+    private static final Bulkhead LIST_READS = new Bulkhead("list",
+            Integer.getInteger("bulkhead.list.threads", 3), Integer.getInteger("bulkhead.list.queueSize", 100));
+    private static final Bulkhead LOOKUPS = new Bulkhead("lookup",
+            Integer.getInteger("bulkhead.lookup.threads", 4), Integer.getInteger("bulkhead.lookup.queueSize", 1000));
+    private static final Bulkhead WRITES = new Bulkhead("write",
+            Integer.getInteger("bulkhead.write.threads", 3), Integer.getInteger("bulkhead.write.queueSize", 1000));
+    /**
+     * Password hashing is pure CPU, so it gets one thread per core and a short queue: a login storm then uses at most
+     * the CPU it is given, and once the queue is full further logins and registrations get a 429 with Retry-After
+     * instead of waiting. Override with -Dbulkhead.hash.threads and -Dbulkhead.hash.queueSize.
+     */
+    private static final Bulkhead HASHING = new Bulkhead("hash",
+            Integer.getInteger("bulkhead.hash.threads", Runtime.getRuntime().availableProcessors()),
+            Integer.getInteger("bulkhead.hash.queueSize", 32));
+
     private AccountService accountService;
     private MessageService messageService;
+    private TimelineService timelineService;
+    /**
+     * Per-account limits on creating messages, checked before any database work. Each route has its own token
+     * bucket per account, set with -Dratelimit.{route}.perSecond and -Dratelimit.{route}.burst; a rate of 0 turns the
+     * limit off. A batch takes one permit per message, so its burst must be at least the largest batch allowed.
+     */
+    private final RateLimiter messageCreateLimiter = rateLimiter("message_create", 10, 20);
+    private final RateLimiter messageBatchLimiter = rateLimiter("message_batch", 100, MessageService.MAX_BATCH_SIZE);
+    private final SessionTokens sessionTokens = new SessionTokens(TOKEN_TTL_MILLIS, TOKEN_ROTATE_MILLIS,
+            SessionTokens.parseKeys(System.getProperty("auth.token.keys")));
+    /**
+     * Recently sent compressed bodies, keyed by the ETag they were built under together with the path and query, so a
+     * repeated listing skips the database, serialization and compression. Bounded by -Dhttp.compression.cache.maxSize
+     * bodies; an entry can never be served stale, because any change gives the resource a new ETag.
+     */
+    private final LruCache<String, byte[]> compressedBodies =
+            new LruCache<>(Integer.getInteger("http.compression.cache.maxSize", 32));
+    /**
+     * Only used in virtual-thread mode; null otherwise, because the platform thread pool already bounds concurrency.
+     */
+    private final ConcurrencyLimiter requestLimiter;
 
     /**
      * Constructor initializes the account and message services, injecting DAOs.
      */
     public SocialMediaController() {
         this.accountService = new AccountService();
-        this.messageService = new MessageService(new MessageDAO(), new AccountDAO());
+        this.timelineService = new TimelineService(accountService);
+        this.messageService = new MessageService(new MessageDAO(), accountService, timelineService);
+        this.requestLimiter = runsOnVirtualThreads()
+                ? new ConcurrencyLimiter(maxConcurrentRequests, requestQueueTimeoutMillis)
+                : null;
+        registerMetrics();
     }
 
     /**
@@ -34,20 +180,328 @@ public class SocialMediaController {
      * @return a Javalin app object which defines the behavior of the Javalin controller.
      */
     public Javalin startAPI() {
-        Javalin app = Javalin.create();
+        if (virtualThreads) {
+            // Javalin picks virtual threads for Jetty when this is set and the JDK supports them. The setting is
+            // global, so it is only ever switched on here, never off behind another Javalin instance's back.
+            ConcurrencyUtil.INSTANCE.setUseLoom(true);
+        }
+        Javalin app = Javalin.create(config -> {
+            config.jsonMapper(new CodecJsonMapper());
+            config.compression.none(); // Replaced by compressResponse, which counts its work and caches its output
+        });
+
+        // Runs before every handler, so a forged or expired token never reaches one
+        app.before(this::authenticate);
 
-        app.post("/register", this::registerHandler);
-        app.post("/login", this::loginHandler);
-        app.post("/messages", this::createMessageHandler);
-        app.get("/messages", this::getAllMessagesHandler);
-        app.get("/messages/{message_id}", this::getMessageByIdHandler);
-        app.delete("/messages/{message_id}", this::deleteMessageByIdHandler);
-        app.patch("/messages/{message_id}", this::updateMessageByIdHandler);
-        app.get("/accounts/{account_id}/messages", this::getMessagesByAccountIdHandler);
+        route(app, HandlerType.POST, "/register", this::registerHandler);
+        route(app, HandlerType.POST, "/login", this::loginHandler);
+        route(app, HandlerType.POST, "/messages", this::createMessageHandler);
+        route(app, HandlerType.POST, "/messages/batch", this::createMessagesBatchHandler);
+        route(app, HandlerType.GET, "/messages", this::getAllMessagesHandler);
+        // Registered before /messages/{message_id}, which would otherwise match it
+        route(app, HandlerType.GET, "/messages/search", this::searchMessagesHandler);
+        route(app, HandlerType.GET, "/messages/{message_id}", this::getMessageByIdHandler);
+        route(app, HandlerType.DELETE, "/messages/{message_id}", this::deleteMessageByIdHandler);
+        route(app, HandlerType.PATCH, "/messages/{message_id}", this::updateMessageByIdHandler);
+        route(app, HandlerType.GET, "/accounts/{account_id}/messages", this::getMessagesByAccountIdHandler);
+        route(app, HandlerType.GET, "/accounts/{account_id}/timeline", this::getTimelineHandler);
+        route(app, HandlerType.POST, "/accounts/{account_id}/following/{followee_id}", this::followHandler);
+        route(app, HandlerType.DELETE, "/accounts/{account_id}/following/{followee_id}", this::unfollowHandler);
+
+        // Neither limited nor timed, so it can still be scraped while the service is saturated
+        app.get("/metrics", this::metricsHandler);
+        // After-handlers run once an asynchronous response has completed, so these see the full body and latency
+        app.after(this::compressResponse);
+        app.after(this::recordLatency);
 
         return app;
     }
 
+    /**
+     * Registers an API route whose latency is recorded under its method and path, and which is subject to the
+     * request limit.
+     */
+    private void route(Javalin app, HandlerType method, String path, Handler handler) {
+        app.addHandler(method, path, timed(Metrics.routeTimer(method.name(), path), limited(handler)));
+    }
+
+    /**
+     * Wraps a handler so that its latency, including any time spent waiting for a request slot, is recorded by
+     * recordLatency() when the response is complete. The histogram is resolved once here, so recording costs a clock
+     * read and a few counter increments.
+     */
+    private Handler timed(LatencyHistogram timer, Handler handler) {
+        return ctx -> {
+            ctx.attribute(REQUEST_START, System.nanoTime());
+            ctx.attribute(REQUEST_TIMER, timer);
+            handler.handle(ctx);
+        };
+    }
+
+    /**
+     * Compresses a buffered response body that is large enough, if the client accepts it, and keeps the result for
+     * respondFromCache when the handler marked the response as cacheable. Streamed bodies have already been sent and
+     * are left alone.
+     * @param ctx Javalin Context object.
+     */
+    private void compressResponse(Context ctx) throws IOException {
+        InputStream result = ctx.resultInputStream();
+        if (result == null || ctx.statusCode() != 200 || ctx.res().isCommitted()
+                || ctx.res().getHeader(Header.CONTENT_ENCODING) != null) {
+            return;
+        }
+        // Results set from a string or byte array are in memory, so this is their exact length
+        if (!COMPRESSOR.isWorthCompressing(result.available())) {
+            return;
+        }
+        ctx.header(Header.VARY, Header.ACCEPT_ENCODING);
+        String encoding = ResponseCompressor.negotiate(ctx.header(Header.ACCEPT_ENCODING));
+        if (encoding == null) {
+            return;
+        }
+        byte[] compressed = COMPRESSOR.compress(result.readAllBytes(), encoding);
+        ctx.header(Header.CONTENT_ENCODING, encoding);
+        ctx.result(compressed);
+        String cacheKey = ctx.attribute(COMPRESSED_BODY_KEY);
+        if (cacheKey != null) {
+            compressedBodies.put(cacheKey, compressed);
+        }
+    }
+
+    private void recordLatency(Context ctx) {
+        LatencyHistogram timer = ctx.attribute(REQUEST_TIMER);
+        if (timer != null) {
+            Long start = ctx.attribute(REQUEST_START);
+            timer.recordSince(start);
+        }
+    }
+
+    /**
+     * Runs the database part of a request on a bulkhead and responds once it completes, without holding the request
+     * thread in the meantime. Answers 503 straight away if the bulkhead's queue is full, or later if the work is
+     * turned away by a queue of its own, such as the group-commit writer's.
+     * @param work the service call; it must not touch ctx.
+     * @param respond writes the response from the service call's result.
+     */
+    private <T> void async(Context ctx, Bulkhead bulkhead, Supplier<T> work, Consumer<T> respond) {
+        CompletableFuture<T> result;
+        // Writes check their preconditions against the primary, never a replica that may not have caught up
+        Supplier<T> routed = bulkhead == WRITES || readsYourWrites(ctx)
+                ? () -> ConnectionUtil.readFromPrimary(work)
+                : work;
+        try {
+            result = bulkhead.supply(routed);
+        } catch (RejectedExecutionException e) {
+            ctx.status(503);
+            return;
+        }
+        pipeline(ctx, result, 503, respond);
+    }
+
+    /**
+     * Responds once work that moves between bulkheads has finished. The first stage has already been submitted; if a
+     * later stage finds its bulkhead's queue full, the request is answered with rejectedStatus.
+     * @param rejectedStatus 429 when the later stage is password hashing, 503 otherwise.
+     */
+    private <T> void pipeline(Context ctx, CompletableFuture<T> result, int rejectedStatus, Consumer<T> respond) {
+        if (ctx.attribute(REQUEST_SLOT) != null) {
+            // The database work outlives the handler, so the request slot is held until the work is done
+            ctx.attribute(REQUEST_SLOT, null);
+            result.whenComplete((value, error) -> requestLimiter.release());
+        }
+        ctx.future(() -> result.handle((value, error) -> {
+            if (error == null) {
+                respond.accept(value);
+                return null;
+            }
+            Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+            if (!(cause instanceof RejectedExecutionException)) {
+                throw error instanceof CompletionException
+                        ? (CompletionException) error : new CompletionException(error);
+            }
+            if (rejectedStatus == 429) {
+                tooManyRequests(ctx);
+            } else {
+                ctx.status(rejectedStatus);
+            }
+            return null;
+        }));
+    }
+
+    /**
+     * Sheds a request because the password-hashing queue is full. Hashing clears its queue within a second or so.
+     */
+    private static void tooManyRequests(Context ctx) {
+        ctx.status(429);
+        ctx.header(Header.RETRY_AFTER, "1");
+    }
+
+    /**
+     * Wraps a handler so that it only runs while holding a request slot, when running on virtual threads. Requests
+     * that cannot get a slot in time are answered with 503 without touching the database. A handler that hands its
+     * database work to a bulkhead passes the slot on to pipeline(), which frees it once that work completes rather
+     * than when the handler returns.
+     * @param handler the handler to protect.
+     * @return the handler itself on platform threads, otherwise the limited handler.
+     */
+    private Handler limited(Handler handler) {
+        if (requestLimiter == null) {
+            return handler;
+        }
+        return ctx -> {
+            if (!requestLimiter.tryAcquire()) {
+                ctx.status(503);
+                return;
+            }
+            ctx.attribute(REQUEST_SLOT, Boolean.TRUE);
+            try {
+                handler.handle(ctx);
+            } finally {
+                if (ctx.attribute(REQUEST_SLOT) != null) {
+                    ctx.attribute(REQUEST_SLOT, null);
+                    requestLimiter.release();
+                }
+            }
+        };
+    }
+
+    /**
+     * @return true if virtual threads were asked for with -Dserver.virtualThreads, whatever the JDK, so the request
+     * cap behaves the same on every runtime; or if Javalin's own setting picks them and the JDK has them.
+     */
+    private boolean runsOnVirtualThreads() {
+        return virtualThreads || ConcurrencyUtil.INSTANCE.getUseLoom() && LoomUtil.INSTANCE.getLoomAvailable();
+    }
+
+    /**
+     * @return the request limiter, or null when not running on virtual threads.
+     */
+    public ConcurrencyLimiter getRequestLimiter() {
+        return requestLimiter;
+    }
+
+    /**
+     * Exposes the pool, cache, queue and connection statistics as callbacks on the metrics registry, read only when
+     * /metrics is scraped. Registering again replaces the previous controller's callbacks.
+     */
+    private void registerMetrics() {
+        ConnectionPool pool = ConnectionUtil.getPool();
+        Metrics.gauge("db_pool_active_connections", "Connections currently borrowed.", pool::getActiveCount);
+        Metrics.gauge("db_pool_idle_connections", "Connections idle in the pool.", pool::getIdleCount);
+        Metrics.gauge("db_pool_waiting_threads", "Callers waiting for a connection.", pool::getWaiterCount);
+        Metrics.counter("db_pool_borrows_total", "Connections borrowed.", pool::getBorrowCount);
+        Metrics.counter("db_pool_wait_seconds_total", "Time spent waiting for a connection.",
+                () -> pool.getTotalWaitMillis() / 1000.0);
+        Metrics.counter("db_pool_timeouts_total", "Borrows that timed out.", pool::getTimeoutCount);
+        Metrics.counter("db_statement_cache_hits_total", "Prepared statements reused.", pool::getStatementHitCount);
+        Metrics.counter("db_statement_cache_misses_total", "Prepared statements compiled.",
+                pool::getStatementMissCount);
+        Metrics.counter("db_routed_reads_total", "Lag-tolerant reads, by the database that served them.", "target",
+                "replica", ConnectionUtil::getReplicaReadCount);
+        Metrics.counter("db_routed_reads_total", "Lag-tolerant reads, by the database that served them.", "target",
+                "primary", ConnectionUtil::getPrimaryReadCount);
+        List<ConnectionPool> replicaPools = ConnectionUtil.getReplicaPools();
+        for (int i = 0; i < replicaPools.size(); i++) {
+            ConnectionPool replicaPool = replicaPools.get(i);
+            Metrics.gauge("db_replica_pool_active_connections", "Replica connections currently borrowed.", "replica",
+                    Integer.toString(i), replicaPool::getActiveCount);
+            Metrics.counter("db_replica_pool_timeouts_total", "Replica borrows that timed out.", "replica",
+                    Integer.toString(i), replicaPool::getTimeoutCount);
+        }
+        for (int shard : MessageShards.getAllShards()) {
+            String label = Integer.toString(shard);
+            Metrics.gauge("message_shard_slots", "Message slots stored on each shard.", "shard", label,
+                    () -> MessageShards.getSlotCountOf(shard));
+            if (shard > 0) {
+                ConnectionPool shardPool = MessageShards.getShardPool(shard);
+                Metrics.gauge("message_shard_pool_active_connections", "Shard connections currently borrowed.",
+                        "shard", label, shardPool::getActiveCount);
+                Metrics.counter("message_shard_pool_timeouts_total", "Shard borrows that timed out.", "shard", label,
+                        shardPool::getTimeoutCount);
+            }
+        }
+
+        registerCacheMetrics("message_cache", messageService.getMessageCache());
+        Metrics.gauge("message_search_index_documents", "Messages in the full-text index.",
+                messageService.getSearchIndex()::size);
+        Metrics.gauge("message_search_index_terms", "Distinct terms in the full-text index.",
+                messageService.getSearchIndex()::getTermCount);
+        registerCacheMetrics("account_by_id_cache", accountService.getAccountsById());
+        registerCacheMetrics("account_by_username_cache", accountService.getAccountsByUsername());
+        registerCacheMetrics("verified_credential_cache", accountService.getVerifiedCredentials());
+        Metrics.gauge("auth_token_keys", "Keys that session tokens are accepted from.", sessionTokens::getKeyCount);
+        registerCacheMetrics("timeline_cache", timelineService.getTimelines());
+        registerCacheMetrics("compressed_body_cache", compressedBodies);
+        Metrics.counter("http_responses_compressed_total", "Response bodies compressed.",
+                COMPRESSOR::getCompressedCount);
+        Metrics.counter("http_response_compression_input_bytes_total", "Bytes of response bodies before compression.",
+                COMPRESSOR::getInputBytes);
+        Metrics.counter("http_response_compression_output_bytes_total", "Bytes of response bodies after compression.",
+                COMPRESSOR::getOutputBytes);
+        Metrics.counter("http_response_compression_seconds_total", "Time spent compressing response bodies.",
+                () -> COMPRESSOR.getCompressNanos() / 1e9);
+
+        if (MessageBatchWriter.isEnabled()) {
+            MessageBatchWriter writer = MessageBatchWriter.getInstance();
+            Metrics.gauge("message_group_commit_queue_depth", "Inserts waiting for the group-commit writer.",
+                    writer::getQueueDepth);
+            Metrics.counter("message_group_commit_batches_total", "Group-commit batches written.",
+                    writer::getBatchCount);
+            Metrics.counter("message_group_commit_rows_total", "Messages inserted by group commit.",
+                    writer::getRowCount);
+            Metrics.counter("message_group_commit_rejected_total",
+                    "Inserts answered with 503 because the queue was full.", writer::getRejectedCount);
+        }
+        for (RateLimiter limiter : new RateLimiter[] { messageCreateLimiter, messageBatchLimiter }) {
+            if (limiter == null) {
+                continue;
+            }
+            Metrics.counter("rate_limit_allowed_total", "Requests within their account's rate limit.", "route",
+                    limiter.getName(), limiter::getAllowedCount);
+            Metrics.counter("rate_limit_rejected_total", "Requests answered with 429 by the rate limit.", "route",
+                    limiter.getName(), limiter::getRejectedCount);
+            Metrics.gauge("rate_limit_accounts", "Accounts with a rate-limit bucket in memory.", "route",
+                    limiter.getName(), limiter::size);
+        }
+        for (Bulkhead bulkhead : new Bulkhead[] { LIST_READS, LOOKUPS, WRITES, HASHING }) {
+            Metrics.gauge("bulkhead_active_threads", "Threads running database work.", "bulkhead",
+                    bulkhead.getName(), bulkhead::getActiveCount);
+            Metrics.gauge("bulkhead_queue_depth", "Database work waiting for a thread.", "bulkhead",
+                    bulkhead.getName(), bulkhead::getQueueDepth);
+            Metrics.counter("bulkhead_completed_total", "Database work completed.", "bulkhead",
+                    bulkhead.getName(), bulkhead::getCompletedCount);
+            Metrics.counter("bulkhead_rejected_total", "Requests shed with 503 or 429 because the queue was full.",
+                    "bulkhead", bulkhead.getName(), bulkhead::getRejectedCount);
+        }
+        if (requestLimiter != null) {
+            Metrics.gauge("http_requests_in_flight", "Requests holding a request slot.",
+                    requestLimiter::getInFlightCount);
+            Metrics.gauge("http_requests_waiting", "Requests waiting for a request slot.",
+                    requestLimiter::getWaitingCount);
+            Metrics.counter("http_requests_rejected_total", "Requests answered with 503.",
+                    requestLimiter::getRejectedCount);
+        }
+    }
+
+    private static void registerCacheMetrics(String name, LruCache<?, ?> cache) {
+        Metrics.gauge(name + "_size", "Entries cached.", cache::size);
+        Metrics.counter(name + "_hits_total", "Cache hits.", cache::getHitCount);
+        Metrics.counter(name + "_misses_total", "Cache misses.", cache::getMissCount);
+        Metrics.counter(name + "_evictions_total", "Entries evicted to stay within the size bound.",
+                cache::getEvictionCount);
+    }
+
+    /**
+     * Writes every metric in the Prometheus text format.
+     * @param ctx Javalin Context object.
+     */
+    private void metricsHandler(Context ctx) {
+        StringBuilder out = new StringBuilder(16 * 1024);
+        Metrics.writePrometheus(out);
+        ctx.contentType(PROMETHEUS_CONTENT_TYPE);
+        ctx.result(out.toString());
+    }
+
     /**
      * Handles user registration. It validates input and creates a new account.
      * @param ctx Javalin Context object.
@@ -65,27 +519,31 @@ public class SocialMediaController {
             return;
         }
 
-        // Check if username already exists
-        if (accountService.getAccountByUsername(account.getUsername()) != null) {
-            ctx.status(400);
+        // Hash the password on the hashing bulkhead, then create the account; the service rejects a username that
+        // already exists
+        CompletableFuture<String> passwordHash;
+        try {
+            passwordHash = HASHING.supply(() -> PasswordHasher.hash(account.getPassword()));
+        } catch (RejectedExecutionException e) {
+            tooManyRequests(ctx);
             return;
         }
-        // Create account
-        Account newAccount = accountService.createAccount(account);
-
-        if (newAccount != null) {
-            ctx.json(newAccount);
-        } 
-        else {
-            ctx.status(200);
-        }
-
+        CompletableFuture<Account> created =
+                passwordHash.thenCompose(hash -> WRITES.supply(() -> ConnectionUtil.readFromPrimary(
+                        () -> accountService.createAccount(account, hash))));
+        pipeline(ctx, created, 503, newAccount -> {
+            if (newAccount != null) {
+                ctx.json(newAccount);
+            }
+            else {
+                ctx.status(400);
+            }
+        });
     }
 
     public void registerUser(Context ctx) {
         try {
-            ObjectMapper om = new ObjectMapper();
-            Account account = om.readValue(ctx.body(), Account.class); // Parse JSON body into Account object
+            Account account = JsonCodec.ACCOUNT_READER.readValue(ctx.body()); // Parse JSON body into Account object
     
             // Validate username and password
             if (account.getUsername() == null || account.getUsername().isBlank() || 
@@ -117,16 +575,35 @@ public class SocialMediaController {
     public void loginHandler(Context ctx) {
         // Parse request body as Account
         Account loginAttempt = ctx.bodyAsClass(Account.class);  
-        Account loggedInAccount = accountService.verifyLogin(loginAttempt.getUsername(), loginAttempt.getPassword());
-        
-        if (loggedInAccount != null) {
-            ctx.json(loggedInAccount);  // Return the Account object as JSON if login succeeds
-            ctx.status(200);  // OK status
-        } 
-        else {
-            ctx.status(401);  // Unauthorized if login fails
+        String password = loginAttempt.getPassword();
+        CompletableFuture<Account> account;
+        try {
+            account = LOOKUPS.supply(() -> accountService.getAccountByUsername(loginAttempt.getUsername()));
+        } catch (RejectedExecutionException e) {
+            ctx.status(503);
+            return;
         }
-       
+        // Only a login that missed the verified-credential cache queues for a hashing thread
+        CompletableFuture<Account> loggedIn = account.thenCompose(found -> {
+            if (found == null || password == null) {
+                return CompletableFuture.completedFuture(null);
+            }
+            Account verified = accountService.verifyRecentLogin(found, password);
+            if (verified != null) {
+                return CompletableFuture.completedFuture(verified);
+            }
+            return HASHING.supply(() -> accountService.verifyPassword(found, password));
+        });
+        pipeline(ctx, loggedIn, 429, loggedInAccount -> {
+            if (loggedInAccount != null) {
+                ctx.header(AUTH_TOKEN_HEADER, sessionTokens.issue(loggedInAccount.getAccount_id()));
+                ctx.json(loggedInAccount);  // Return the Account object as JSON if login succeeds
+                ctx.status(200);  // OK status
+            }
+            else {
+                ctx.status(401);  // Unauthorized if login fails
+            }
+        });
     }
 
     /**
@@ -135,24 +612,181 @@ public class SocialMediaController {
      */
     public void createMessageHandler(Context ctx) {
         Message message = ctx.bodyAsClass(Message.class);  // Convert JSON request to Message object
-        //System.out.println("Hello Message");
-        Message createdMessage = messageService.createMessage(message);  // Call service layer
-        System.out.println(createdMessage);
-        if (createdMessage != null) {
-            ctx.json(createdMessage);  // Return the created message as JSON
-            ctx.status(200);  // Success status
-        } else {
-            ctx.status(400);  // Client error status if message creation fails
+        if (!actsFor(ctx, message.getPosted_by())
+                || !withinRateLimit(ctx, messageCreateLimiter, message.getPosted_by(), 1)) {
+            return;
+        }
+        // A token can only have been issued to an existing account, so it saves looking the author up
+        boolean authorVerified = ctx.attribute(AUTHENTICATED_ACCOUNT) != null;
+        async(ctx, WRITES, () -> messageService.createMessage(message, authorVerified), createdMessage -> {
+            if (createdMessage != null) {
+                ctx.json(createdMessage);  // Return the created message as JSON
+                ctx.status(200);  // Success status
+            } else {
+                ctx.status(400);  // Client error status if message creation fails
+            }
+        });
+    }
+
+    /**
+     * Creates up to MessageService.MAX_BATCH_SIZE messages from a JSON array in one transaction. Responds with one
+     * result per message, in request order, each carrying the status POST /messages would have returned for it.
+     * Responds with 400 if the body is not a non-empty array within the size limit.
+     * @param ctx Javalin Context object.
+     */
+    private void createMessagesBatchHandler(Context ctx) {
+        Message[] messages = ctx.bodyAsClass(Message[].class);
+        if (messages == null || messages.length == 0 || messages.length > MessageService.MAX_BATCH_SIZE) {
+            ctx.status(400);
+            return;
+        }
+        Map<Integer, Integer> messagesByAuthor = new HashMap<>();
+        for (Message message : messages) {
+            if (!actsFor(ctx, message.getPosted_by())) {
+                return;
+            }
+            messagesByAuthor.merge(message.getPosted_by(), 1, Integer::sum);
+        }
+        List<Map.Entry<Integer, Integer>> charged = new ArrayList<>(messagesByAuthor.size());
+        for (Map.Entry<Integer, Integer> author : messagesByAuthor.entrySet()) {
+            if (!withinRateLimit(ctx, messageBatchLimiter, author.getKey(), author.getValue())) {
+                // Nothing of a rejected batch is created, so it must not use up the other authors' allowance
+                for (Map.Entry<Integer, Integer> chargedAuthor : charged) {
+                    messageBatchLimiter.refund(chargedAuthor.getKey(), chargedAuthor.getValue());
+                }
+                return;
+            }
+            charged.add(author);
         }
+        async(ctx, WRITES, () -> messageService.createMessages(Arrays.asList(messages)), createdMessages -> {
+            List<MessageBatchResult> results = new ArrayList<>(createdMessages.size());
+            for (Message createdMessage : createdMessages) {
+                results.add(new MessageBatchResult(createdMessage != null ? 200 : 400, createdMessage));
+            }
+            ctx.json(results);
+        });
     }
 
     /**
      * Retrieves all messages and returns them as JSON.
      * @param ctx Javalin Context object.
      */
-    private void getAllMessagesHandler(Context ctx) {
-        List<Message> messages = messageService.getAllMessages(); // Fetch all messages from service
-        ctx.json(messages); // Return the list of messages
+    private void getAllMessagesHandler(Context ctx) throws IOException {
+        if (respondFromCache(ctx, messageService.getMessagesTag())) {
+            return;
+        }
+        if ("true".equals(ctx.queryParam("stream"))) {
+            // Stays on the request thread: it writes to the response while the query is still running
+            streamAllMessagesHandler(ctx);
+            return;
+        }
+        if (ctx.queryParam("ids") != null) {
+            getMessagesByIdsHandler(ctx);
+            return;
+        }
+        if (isPageRequest(ctx)) {
+            pageHandler(ctx, null);
+            return;
+        }
+        async(ctx, LIST_READS, messageService::getAllMessages, messages -> { // Fetch all messages from service
+            ctx.json(messages); // Return the list of messages
+        });
+    }
+
+    /**
+     * Writes every message to the response as a JSON array, one row at a time straight from the ResultSet, so memory
+     * use stays flat however large the table is. The body is identical to the non-streamed listing.
+     * @param ctx Javalin Context object.
+     */
+    private void streamAllMessagesHandler(Context ctx) throws IOException {
+        ctx.contentType(ContentType.APPLICATION_JSON);
+        ctx.header(Header.VARY, Header.ACCEPT_ENCODING);
+        String encoding = ResponseCompressor.negotiate(ctx.header(Header.ACCEPT_ENCODING));
+        GZIPOutputStream compressed = null;
+        OutputStream out = ctx.outputStream();
+        if (encoding != null) {
+            // The whole table is well above the compression threshold, so there is no need to measure it first
+            ctx.header(Header.CONTENT_ENCODING, encoding);
+            out = compressed = COMPRESSOR.compressStream(out, encoding);
+        }
+        try (JsonGenerator generator = JsonCodec.getFactory().createGenerator(out)) {
+            // The response stream belongs to Javalin, so the generator must only flush it
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            // Nor may it close the array after a failure, which would pass a truncated listing off as complete
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+            generator.writeStartArray();
+            if (readsYourWrites(ctx)) {
+                ConnectionUtil.readFromPrimary(() -> {
+                    try {
+                        messageService.forEachMessage(message -> JsonCodec.writeMessage(generator, message));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    return null;
+                });
+            } else {
+                messageService.forEachMessage(message -> JsonCodec.writeMessage(generator, message));
+            }
+            generator.writeEndArray();
+        } catch (UncheckedIOException e) {
+            e.printStackTrace();
+            abortResponse(ctx, e.getCause());
+            return;
+        } catch (IOException e) {
+            e.printStackTrace();
+            abortResponse(ctx, e);
+            return;
+        }
+        if (compressed != null) {
+            compressed.finish(); // Writes the gzip trailer; Javalin closes the response stream itself
+        }
+    }
+
+    /**
+     * Fails a response whose body could not be finished. Until the status line has gone out it becomes a plain 500.
+     * After that the status can no longer change, so the connection is dropped without ending the body, and the
+     * client sees an incomplete response rather than a complete one missing rows.
+     */
+    private static void abortResponse(Context ctx, Throwable cause) {
+        if (!ctx.res().isCommitted()) {
+            ctx.res().reset(); // Also drops Content-Encoding and the buffered start of the body
+            ctx.status(500);
+            return;
+        }
+        Request.getBaseRequest(ctx.req()).getHttpChannel().abort(cause);
+    }
+
+    /**
+     * Searches message text, for GET /messages/search?q=hello+wor*&limit=20. Returns a JSON array of the matching
+     * messages, newest first. Responds with 400 if q has no searchable words or the limit is invalid.
+     * @param ctx Javalin Context object.
+     */
+    private void searchMessagesHandler(Context ctx) {
+        String query = ctx.queryParam("q");
+        String limitParam = ctx.queryParam("limit");
+        int limit;
+        try {
+            limit = limitParam != null ? Integer.parseInt(limitParam) : DEFAULT_PAGE_SIZE;
+        } catch (NumberFormatException e) {
+            ctx.status(400); // Malformed limit
+            return;
+        }
+        if (respondFromCache(ctx, messageService.getMessagesTag())) {
+            return;
+        }
+        async(ctx, LOOKUPS, () -> {
+            try {
+                return messageService.searchMessages(query, limit);
+            } catch (IllegalArgumentException e) {
+                return null; // No searchable words, or limit out of range
+            }
+        }, messages -> {
+            if (messages != null) {
+                ctx.json(messages);
+            } else {
+                ctx.status(400);
+            }
+        });
     }
 
     /**
@@ -161,34 +795,80 @@ public class SocialMediaController {
      */
     private void getMessageByIdHandler(Context ctx) {
         int messageId = Integer.parseInt(ctx.pathParam("message_id")); // Get message ID from path
-        Message message = MessageService.getMessageById(messageId); // Fetch message by ID
-        if (message != null) {
-            ctx.json(message); // Return found message
-        } else {
-            ctx.json(""); // Return empty if not found
+        if (respondFromCache(ctx, messageService.getMessageTag(messageId))) {
+            return;
+        }
+        async(ctx, LOOKUPS, () -> messageService.getMessageById(messageId), message -> { // Fetch message by ID
+            if (message != null) {
+                ctx.json(message); // Return found message
+            } else {
+                ctx.json(""); // Return empty if not found
+            }
+        });
+    }
+
+    /**
+     * Retrieves several messages at once, for GET /messages?ids=1,2,3. Returns
+     * {"messages": [...], "missing_ids": [...]} with both lists in the order the ids were given, so a client can
+     * render a whole page of messages with one request. Responds with 400 if an id is not a number or there are more
+     * than MessageService.MAX_PAGE_SIZE of them.
+     * @param ctx Javalin Context object.
+     */
+    private void getMessagesByIdsHandler(Context ctx) {
+        List<Integer> messageIds = new ArrayList<>();
+        try {
+            for (String id : ctx.queryParam("ids").split(",")) {
+                if (!id.isBlank()) {
+                    messageIds.add(Integer.parseInt(id.trim()));
+                }
+            }
+        } catch (NumberFormatException e) {
+            ctx.status(400);
+            return;
+        }
+        if (messageIds.isEmpty() || messageIds.size() > MessageService.MAX_PAGE_SIZE) {
+            ctx.status(400);
+            return;
         }
+        async(ctx, LOOKUPS, () -> messageService.getMessagesByIds(messageIds), ctx::json);
     }
 
     /**
-     * Deletes a message by its ID and returns the deleted message.
+     * Deletes a message by its ID and returns the deleted message. A request with a token may only delete its own
+     * account's messages and is answered with 403 for anyone else's.
      * @param ctx Javalin Context object.
      */
     private void deleteMessageByIdHandler(Context ctx) {
         int messageId = Integer.parseInt(ctx.pathParam("message_id")); // Get message ID from path
-        Message deletedMessage = messageService.deleteMessageById(messageId); // Call service to delete message
-        if (deletedMessage != null) {
-            ctx.json(deletedMessage); // Return the deleted message
-        } else {
-            ctx.json(""); // Return empty if message not found
+        if (!authenticatedIfRequired(ctx)) {
+            return;
         }
+        Integer caller = ctx.attribute(AUTHENTICATED_ACCOUNT);
+        // Call service to delete message
+        async(ctx, WRITES, () -> {
+            Message deletedMessage = messageService.deleteMessageById(messageId, caller);
+            requireOwnMessage(deletedMessage, caller, messageId);
+            return deletedMessage;
+        }, deletedMessage -> {
+            if (deletedMessage != null) {
+                ctx.json(deletedMessage); // Return the deleted message
+            } else {
+                ctx.json(""); // Return empty if message not found
+            }
+        });
     }
 
      /**
-     * Updates a message by its ID with new content, validating the message text.
+     * Updates a message by its ID with new content, validating the message text. A request with a token may only
+     * edit its own account's messages and is answered with 403 for anyone else's.
      * @param ctx Javalin Context object.
      */
     private void updateMessageByIdHandler(Context ctx) {
         int messageId = Integer.parseInt(ctx.pathParam("message_id"));  // Get message ID from path
+        if (!authenticatedIfRequired(ctx)) {
+            return;
+        }
+        Integer caller = ctx.attribute(AUTHENTICATED_ACCOUNT);
         Message messageUpdates = ctx.bodyAsClass(Message.class); // Parse updated message from request body
 
         // Validate message_text
@@ -199,25 +879,27 @@ public class SocialMediaController {
         }
 
         // Update message
-        Message updatedMessage = messageService.updateMessage(messageId, messageUpdates.getMessage_text());
-
-        if (updatedMessage != null) {
-            ctx.json(updatedMessage); // Return the updated message
-        } else {
-            ctx.status(400); // Bad Request if update fails
-        }
+        async(ctx, WRITES, () -> {
+            Message updatedMessage = messageService.updateMessage(messageId, caller, messageUpdates.getMessage_text());
+            requireOwnMessage(updatedMessage, caller, messageId);
+            return updatedMessage;
+        }, updatedMessage -> {
+            if (updatedMessage != null) {
+                ctx.json(updatedMessage); // Return the updated message
+            } else {
+                ctx.status(400); // Bad Request if update fails
+            }
+        });
     }
 
     // Method to handle updating messages
     public void updateMessage(Context context) {
         int messageId = Integer.parseInt(context.pathParam("message_id"));
-        ObjectMapper om = new ObjectMapper();
-
         try {
             // Read the incoming message object
-            Message updatedMessage = om.readValue(context.body(), Message.class);
+            Message updatedMessage = JsonCodec.MESSAGE_READER.readValue(context.body());
             // Fetch the existing message from the database
-            Message existingMessage = MessageService.getMessageById(messageId);
+            Message existingMessage = messageService.getMessageById(messageId);
 
             // Check if the message exists
             if (existingMessage != null) {
@@ -229,7 +911,7 @@ public class SocialMediaController {
                     messageService.updateMessage(existingMessage); // Update the message in the service
 
                     // Fetch the updated message and return it in the response
-                    Message updatedMessageResponse = MessageService.getMessageById(messageId);
+                    Message updatedMessageResponse = messageService.getMessageById(messageId);
                     context.json(updatedMessageResponse); // Return the full updated message
                     context.status(200); // Set status to 200 OK
                 } else {
@@ -250,9 +932,291 @@ public class SocialMediaController {
      */
     private void getMessagesByAccountIdHandler(Context ctx) {
         int accountId = Integer.parseInt(ctx.pathParam("account_id")); // Get account ID from path
-        List<Message> messages = MessageService.getMessagesByAccountId(accountId); // Fetch messages by account ID
-        ctx.json(messages); // Return the list of messages
-        ctx.status(200); // OK status
+        if (respondFromCache(ctx, messageService.getAccountMessagesTag(accountId))) {
+            return;
+        }
+        if (isPageRequest(ctx)) {
+            pageHandler(ctx, accountId);
+            return;
+        }
+        // Fetch messages by account ID
+        async(ctx, LIST_READS, () -> MessageService.getMessagesByAccountId(accountId), messages -> {
+            ctx.json(messages); // Return the list of messages
+            ctx.status(200); // OK status
+        });
+    }
+
+    /**
+     * Retrieves the home timeline of an account: the newest messages by the accounts it follows, newest first, for
+     * GET /accounts/{account_id}/timeline?limit=50. Responds with 400 if the limit is invalid.
+     * @param ctx Javalin Context object.
+     */
+    private void getTimelineHandler(Context ctx) {
+        int accountId = Integer.parseInt(ctx.pathParam("account_id")); // Get account ID from path
+        String limitParam = ctx.queryParam("limit");
+        int limit;
+        try {
+            limit = limitParam != null ? Integer.parseInt(limitParam) : DEFAULT_PAGE_SIZE;
+        } catch (NumberFormatException e) {
+            ctx.status(400); // Malformed limit
+            return;
+        }
+        async(ctx, LOOKUPS, () -> {
+            try {
+                return messageService.getTimeline(accountId, limit);
+            } catch (IllegalArgumentException e) {
+                return null; // Limit out of range
+            }
+        }, messages -> {
+            if (messages != null) {
+                ctx.json(messages);
+            } else {
+                ctx.status(400);
+            }
+        });
+    }
+
+    /**
+     * Makes account_id follow followee_id. Following an account twice is not an error. Responds with 400 if either
+     * account does not exist or they are the same account.
+     * @param ctx Javalin Context object.
+     */
+    private void followHandler(Context ctx) {
+        int accountId = Integer.parseInt(ctx.pathParam("account_id"));
+        int followeeId = Integer.parseInt(ctx.pathParam("followee_id"));
+        if (!actsFor(ctx, accountId)) {
+            return;
+        }
+        async(ctx, WRITES, () -> timelineService.follow(accountId, followeeId), followed -> {
+            ctx.status(followed ? 200 : 400);
+        });
+    }
+
+    /**
+     * Makes account_id stop following followee_id. Responds with 200 whether or not it was following.
+     * @param ctx Javalin Context object.
+     */
+    private void unfollowHandler(Context ctx) {
+        int accountId = Integer.parseInt(ctx.pathParam("account_id"));
+        int followeeId = Integer.parseInt(ctx.pathParam("followee_id"));
+        if (!actsFor(ctx, accountId)) {
+            return;
+        }
+        async(ctx, WRITES, () -> timelineService.unfollow(accountId, followeeId), unfollowed -> ctx.status(200));
+    }
+
+    /**
+     * Checks the session token of a request that carries one, entirely in memory, and remembers which account it
+     * was issued to. A request with a bad or expired token is answered with 401; one without a token carries on
+     * unauthenticated.
+     * @param ctx Javalin Context object.
+     */
+    private void authenticate(Context ctx) {
+        String authorization = ctx.header(Header.AUTHORIZATION);
+        if (authorization == null || !authorization.regionMatches(true, 0, "Bearer ", 0, 7)) {
+            return;
+        }
+        Integer accountId = sessionTokens.verify(authorization.substring(7).trim());
+        if (accountId == null) {
+            throw new UnauthorizedResponse();
+        }
+        ctx.attribute(AUTHENTICATED_ACCOUNT, accountId);
+    }
+
+    /**
+     * Creates the limiter for one route from its system properties, or returns null if the route is not limited.
+     * Buckets of accounts that have been idle for -Dratelimit.idleMillis are dropped.
+     */
+    private static RateLimiter rateLimiter(String route, double perSecond, int burst) {
+        double rate = Double.parseDouble(System.getProperty("ratelimit." + route + ".perSecond",
+                Double.toString(perSecond)));
+        if (rate <= 0) {
+            return null;
+        }
+        return new RateLimiter(route, rate, Integer.getInteger("ratelimit." + route + ".burst", burst),
+                Long.getLong("ratelimit.idleMillis", 60_000L));
+    }
+
+    /**
+     * Takes permits from accountId's bucket, or answers 429 with a Retry-After of when they will be available. A
+     * request that could never fit in a full bucket is answered with 400.
+     * @param ctx Javalin Context object.
+     * @param limiter the route's limiter, or null if it is not limited.
+     * @return true if the handler may go on.
+     */
+    private static boolean withinRateLimit(Context ctx, RateLimiter limiter, int accountId, int permits) {
+        if (limiter == null) {
+            return true;
+        }
+        if (!limiter.fits(permits)) {
+            ctx.status(400);
+            return false;
+        }
+        long waitNanos = limiter.tryAcquire(accountId, permits);
+        if (waitNanos == 0) {
+            return true;
+        }
+        ctx.status(429);
+        ctx.header(Header.RETRY_AFTER, Long.toString(TimeUnit.NANOSECONDS.toSeconds(waitNanos) + 1));
+        return false;
+    }
+
+    /**
+     * Checks that the request may act for accountId: its token was issued to that account, or it has no token and
+     * tokens are not required. Otherwise answers 403, or 401 for a missing token.
+     * @param ctx Javalin Context object.
+     * @return true if the handler may go on.
+     */
+    private boolean actsFor(Context ctx, int accountId) {
+        Integer caller = ctx.attribute(AUTHENTICATED_ACCOUNT);
+        if (caller == null) {
+            return authenticatedIfRequired(ctx);
+        }
+        if (caller != accountId) {
+            ctx.status(403);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Checks that the request carries a token, if tokens are required. Otherwise answers 401.
+     * @param ctx Javalin Context object.
+     * @return true if the handler may go on.
+     */
+    private boolean authenticatedIfRequired(Context ctx) {
+        if (tokensRequired && ctx.attribute(AUTHENTICATED_ACCOUNT) == null) {
+            ctx.status(401);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Tells apart the two reasons an edit or delete restricted to the caller's own messages can change nothing: the
+     * message does not exist, or someone else posted it. Only looked up after such a miss, so the common case costs
+     * no extra query.
+     * @param changed the message the edit or delete returned, or null if it matched no row.
+     * @param caller the authenticated account the change was restricted to, or null if it was not restricted.
+     * @throws ForbiddenResponse if the message exists but belongs to another account; Javalin answers 403.
+     */
+    private void requireOwnMessage(Message changed, Integer caller, int messageId) {
+        if (changed == null && caller != null && messageService.getMessageById(messageId) != null) {
+            throw new ForbiddenResponse();
+        }
+    }
+
+    /**
+     * Labels the response with a weak ETag for tag and answers 304 Not Modified, with no body, when the request's
+     * If-None-Match already lists that ETag. Otherwise, if a compressed body built under the same tag for the same
+     * path and query is cached, sends that. Must be called before the data is read, with a tag taken before the
+     * read: a change that lands in between then makes the response look older than it is, never newer, so the client
+     * at worst fetches it again.
+     *
+     * Does nothing for a request that may read from a replica. The tag counts changes made on the primary, and a
+     * replica can be behind it by more than the assumed lag, so a body read there must be neither labelled with the
+     * tag nor kept under it, or a stale body would be revalidated and served until the next change.
+     * @param ctx Javalin Context object.
+     * @param tag a version tag from MessageService covering everything the response is built from.
+     * @return true if the response is complete and the handler must not read anything.
+     */
+    private boolean respondFromCache(Context ctx, String tag) {
+        if (ConnectionUtil.hasReplicas() && !readsYourWrites(ctx)) {
+            return false;
+        }
+        if (notModified(ctx, tag)) {
+            return true;
+        }
+        String encoding = ResponseCompressor.negotiate(ctx.header(Header.ACCEPT_ENCODING));
+        if (encoding == null) {
+            return false;
+        }
+        String cacheKey = tag + " " + encoding + " " + ctx.path() + "?" + ctx.queryString();
+        byte[] compressed = compressedBodies.get(cacheKey);
+        if (compressed == null) {
+            ctx.attribute(COMPRESSED_BODY_KEY, cacheKey); // Let compressResponse keep the body it builds
+            return false;
+        }
+        ctx.contentType(ContentType.APPLICATION_JSON);
+        ctx.header(Header.VARY, Header.ACCEPT_ENCODING);
+        ctx.header(Header.CONTENT_ENCODING, encoding);
+        ctx.result(compressed);
+        return true;
+    }
+
+    /**
+     * @return true if the request asked to read from the primary with READ_YOUR_WRITES_HEADER.
+     */
+    private static boolean readsYourWrites(Context ctx) {
+        return ctx.header(READ_YOUR_WRITES_HEADER) != null;
+    }
+
+    /**
+     * Sets the weak ETag for tag and answers 304 if the request's If-None-Match lists it.
+     * @return true if the response is complete.
+     */
+    private static boolean notModified(Context ctx, String tag) {
+        String etag = "W/\"" + tag + "\"";
+        ctx.header(Header.ETAG, etag);
+        ctx.header(Header.CACHE_CONTROL, "no-cache"); // Cache it, but revalidate before every use
+        String ifNoneMatch = ctx.header(Header.IF_NONE_MATCH);
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            // If-None-Match compares weakly, so a W/ prefix on either side is ignored
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals(etag.substring(2))) {
+                ctx.status(304);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A listing is paginated as soon as the client asks for a limit or continues from a cursor. Without either, the
+     * list endpoints keep returning a plain JSON array of every message.
+     * @param ctx Javalin Context object.
+     * @return true if the request carries pagination parameters.
+     */
+    private boolean isPageRequest(Context ctx) {
+        return ctx.queryParam("limit") != null || ctx.queryParam("after") != null;
+    }
+
+    /**
+     * Returns one page of messages as {"messages": [...], "next_cursor": "..."}. Responds with 400 if the limit,
+     * order_by or cursor is invalid.
+     * @param ctx Javalin Context object.
+     * @param postedBy restrict to one account's messages, or null for all messages.
+     */
+    private void pageHandler(Context ctx, Integer postedBy) {
+        String limitParam = ctx.queryParam("limit");
+        String after = ctx.queryParam("after");
+        String orderBy = ctx.queryParam("order_by");
+        int limit;
+        try {
+            limit = limitParam != null ? Integer.parseInt(limitParam) : DEFAULT_PAGE_SIZE;
+        } catch (NumberFormatException e) {
+            ctx.status(400); // Malformed limit
+            return;
+        }
+        async(ctx, LIST_READS, () -> {
+            try {
+                return messageService.getMessagesPage(postedBy, after, orderBy, limit);
+            } catch (IllegalArgumentException e) {
+                return null; // Malformed limit, cursor or ordering
+            }
+        }, page -> {
+            if (page != null) {
+                ctx.json(page);
+            } else {
+                ctx.status(400);
+            }
+        });
     }
 
 }
\ No newline at end of file
@@ -2,6 +2,8 @@ package DAO;
 
 import Model.Account;
 import Util.ConnectionUtil;
+import Util.LatencyHistogram;
+import Util.Metrics;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -11,54 +13,69 @@ import java.sql.SQLException;
 
 public class AccountDAO {
 
-   
+    /**
+     * Latency of each DAO method, exposed on /metrics.
+     */
+    private static final LatencyHistogram GET_BY_USERNAME_TIMER = Metrics.daoTimer("AccountDAO.getAccountByUsername");
+    private static final LatencyHistogram CREATE_TIMER = Metrics.daoTimer("AccountDAO.createAccount");
+    private static final LatencyHistogram LOGIN_TIMER = Metrics.daoTimer("AccountDAO.login");
+    private static final LatencyHistogram EXISTS_TIMER = Metrics.daoTimer("AccountDAO.isAccountExist");
+    private static final LatencyHistogram GET_BY_ID_TIMER = Metrics.daoTimer("AccountDAO.getAccountById");
+    private static final LatencyHistogram UPDATE_PASSWORD_TIMER = Metrics.daoTimer("AccountDAO.updatePassword");
+
 
     public Account getAccountByUsername(String username) {
-        Connection conn = ConnectionUtil.getConnection();
         Account account = null;
-    
-        try {
-            String sql = "SELECT * FROM account WHERE username = ?";
-            PreparedStatement stmt = conn.prepareStatement(sql);
+
+        String sql = "SELECT * FROM account WHERE username = ?";
+        long start = System.nanoTime();
+        try (Connection conn = ConnectionUtil.getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setString(1, username);
-    
-            ResultSet rs = stmt.executeQuery();
-    
-            if (rs.next()) {
-                int accountId = rs.getInt("account_id");
-                String retrievedUsername = rs.getString("username");
-                String password = rs.getString("password");
-    
-                account = new Account(accountId, retrievedUsername, password);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    int accountId = rs.getInt("account_id");
+                    String retrievedUsername = rs.getString("username");
+                    String password = rs.getString("password");
+
+                    account = new Account(accountId, retrievedUsername, password);
+                }
             }
         } catch (SQLException e) {
             e.printStackTrace();
+        } finally {
+            GET_BY_USERNAME_TIMER.recordSince(start);
         }
-    
+
         return account;  // Return the retrieved account, or null if not found
     }
-    
+
 
     public static Account createAccount(Account account) {
-        Connection conn = ConnectionUtil.getConnection();
         Account createdAccount = null;
 
-        try {
-            String sql = "INSERT INTO account (username, password) VALUES (?, ?)";
-            PreparedStatement stmt = conn.prepareStatement(sql, PreparedStatement.RETURN_GENERATED_KEYS);
+        String sql = "INSERT INTO account (username, password) VALUES (?, ?)";
+        long start = System.nanoTime();
+        try (Connection conn = ConnectionUtil.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql, PreparedStatement.RETURN_GENERATED_KEYS)) {
             stmt.setString(1, account.getUsername());
             stmt.setString(2, account.getPassword());
 
             int rowsAffected = stmt.executeUpdate();
             if (rowsAffected > 0) {
-                ResultSet rs = stmt.getGeneratedKeys();
-                if (rs.next()) {
-                    int generatedId = rs.getInt(1);
-                    createdAccount = new Account(generatedId, account.getUsername(), account.getPassword());
+                try (ResultSet rs = stmt.getGeneratedKeys()) {
+                    if (rs.next()) {
+                        int generatedId = rs.getInt(1);
+                        createdAccount = new Account(generatedId, account.getUsername(), account.getPassword());
+                    }
                 }
             }
         } catch (SQLException e) {
             e.printStackTrace();
+        } finally {
+            ConnectionUtil.recordWrite();
+            CREATE_TIMER.recordSince(start);
         }
         return createdAccount;
     }
@@ -66,61 +83,90 @@ public class AccountDAO {
 
 
     public Account login(String username, String password) {
-        Connection conn = ConnectionUtil.getConnection();
         Account account = null;
 
-        try {
-            String sql = "SELECT * FROM account WHERE username = ? AND password = ?";
-            PreparedStatement stmt = conn.prepareStatement(sql);
+        String sql = "SELECT * FROM account WHERE username = ? AND password = ?";
+        long start = System.nanoTime();
+        try (Connection conn = ConnectionUtil.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setString(1, username);
             stmt.setString(2, password);
 
-            ResultSet rs = stmt.executeQuery();
-
-            if (rs.next()) {
-                account = new Account(rs.getInt("account_id"), rs.getString("username"), rs.getString("password"));
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    account = new Account(rs.getInt("account_id"), rs.getString("username"), rs.getString("password"));
+                }
             }
 
         } catch (SQLException e) {
             e.printStackTrace();
+        } finally {
+            LOGIN_TIMER.recordSince(start);
         }
         return account;
     }
 
     public boolean isAccountExist(int accountId) {
-        Connection conn = ConnectionUtil.getConnection();
         boolean exists = false;
 
-        try {
-            String sql = "SELECT * FROM account WHERE account_id = ?";
-            PreparedStatement stmt = conn.prepareStatement(sql);
+        String sql = "SELECT * FROM account WHERE account_id = ?";
+        long start = System.nanoTime();
+        try (Connection conn = ConnectionUtil.getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setInt(1, accountId);
 
-            ResultSet rs = stmt.executeQuery();
-            exists = rs.next();
+            try (ResultSet rs = stmt.executeQuery()) {
+                exists = rs.next();
+            }
 
         } catch (SQLException e) {
             e.printStackTrace();
+        } finally {
+            EXISTS_TIMER.recordSince(start);
         }
         return exists;
     }
 
     public Account getAccountById(int accountId) {
-        try (Connection conn = ConnectionUtil.getConnection()) {
-            String sql = "SELECT * FROM account WHERE account_id = ?";
-            PreparedStatement stmt = conn.prepareStatement(sql);
+        String sql = "SELECT * FROM account WHERE account_id = ?";
+        long start = System.nanoTime();
+        try (Connection conn = ConnectionUtil.getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setInt(1, accountId);
 
-            ResultSet rs = stmt.executeQuery(); 
-
-            if (rs.next()) {
-                return new Account(rs.getInt("account_id"), rs.getString("username"), rs.getString("password"));
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return new Account(rs.getInt("account_id"), rs.getString("username"), rs.getString("password"));
+                }
             }
 
         } catch (SQLException e) {
             e.printStackTrace();
+        } finally {
+            GET_BY_ID_TIMER.recordSince(start);
         }
 
         return null; // Return null if no account is found with the given ID
     }
-}
\ No newline at end of file
+
+    /**
+     * Replaces an account's stored password, for example with a fresh hash of it.
+     * @return true if the account exists and was updated.
+     */
+    public boolean updatePassword(int accountId, String password) {
+        String sql = "UPDATE account SET password = ? WHERE account_id = ?";
+        long start = System.nanoTime();
+        try (Connection conn = ConnectionUtil.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, password);
+            stmt.setInt(2, accountId);
+            return stmt.executeUpdate() > 0;
+        } catch (SQLException e) {
+            e.printStackTrace();
+        } finally {
+            ConnectionUtil.recordWrite();
+            UPDATE_PASSWORD_TIMER.recordSince(start);
+        }
+        return false;
+    }
+}
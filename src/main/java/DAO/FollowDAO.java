@@ -0,0 +1,123 @@
+package DAO;
+
+import Util.ConnectionUtil;
+import Util.LatencyHistogram;
+import Util.Metrics;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class FollowDAO {
+
+    /**
+     * Latency of each DAO method, exposed on /metrics.
+     */
+    private static final LatencyHistogram FOLLOW_TIMER = Metrics.daoTimer("FollowDAO.follow");
+    private static final LatencyHistogram UNFOLLOW_TIMER = Metrics.daoTimer("FollowDAO.unfollow");
+    private static final LatencyHistogram GET_FOLLOWEES_TIMER = Metrics.daoTimer("FollowDAO.getFolloweeIds");
+    private static final LatencyHistogram GET_FOLLOWERS_TIMER = Metrics.daoTimer("FollowDAO.getFollowerIds");
+
+    /**
+     * Records that followerId follows followeeId. Following someone twice is not an error.
+     * @return true if the relationship exists afterwards, false if it could not be stored.
+     */
+    public static boolean follow(int followerId, int followeeId) {
+        boolean followed = false;
+
+        String sql = "MERGE INTO follow (follower_id, followee_id) KEY (follower_id, followee_id) VALUES (?, ?)";
+        long start = System.nanoTime();
+        try (Connection conn = ConnectionUtil.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, followerId);
+            stmt.setInt(2, followeeId);
+            stmt.executeUpdate();
+            followed = true;
+        } catch (SQLException e) {
+            e.printStackTrace();
+        } finally {
+            ConnectionUtil.recordWrite();
+            FOLLOW_TIMER.recordSince(start);
+        }
+        return followed;
+    }
+
+    /**
+     * @return true if followerId was following followeeId.
+     */
+    public static boolean unfollow(int followerId, int followeeId) {
+        boolean unfollowed = false;
+
+        String sql = "DELETE FROM follow WHERE follower_id = ? AND followee_id = ?";
+        long start = System.nanoTime();
+        try (Connection conn = ConnectionUtil.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, followerId);
+            stmt.setInt(2, followeeId);
+            unfollowed = stmt.executeUpdate() > 0;
+        } catch (SQLException e) {
+            e.printStackTrace();
+        } finally {
+            ConnectionUtil.recordWrite();
+            UNFOLLOW_TIMER.recordSince(start);
+        }
+        return unfollowed;
+    }
+
+    /**
+     * @return the ids of the accounts followerId follows.
+     */
+    public static List<Integer> getFolloweeIds(int followerId) {
+        List<Integer> followeeIds = new ArrayList<>();
+
+        String sql = "SELECT followee_id FROM follow WHERE follower_id = ?";
+        long start = System.nanoTime();
+        try (Connection conn = ConnectionUtil.getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, followerId);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    followeeIds.add(rs.getInt(1));
+                }
+            }
+
+        } catch (SQLException e) {
+            e.printStackTrace();
+        } finally {
+            GET_FOLLOWEES_TIMER.recordSince(start);
+        }
+        return followeeIds;
+    }
+
+    /**
+     * @param limit the maximum number of ids to read; a caller that only needs to know whether there are more than
+     * n followers can ask for n + 1.
+     * @return up to limit ids of the accounts following followeeId.
+     */
+    public static List<Integer> getFollowerIds(int followeeId, int limit) {
+        List<Integer> followerIds = new ArrayList<>();
+
+        String sql = "SELECT follower_id FROM follow WHERE followee_id = ? LIMIT ?";
+        long start = System.nanoTime();
+        try (Connection conn = ConnectionUtil.getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, followeeId);
+            stmt.setInt(2, limit);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    followerIds.add(rs.getInt(1));
+                }
+            }
+
+        } catch (SQLException e) {
+            e.printStackTrace();
+        } finally {
+            GET_FOLLOWERS_TIMER.recordSince(start);
+        }
+        return followerIds;
+    }
+}
@@ -0,0 +1,288 @@
+package DAO;
+
+import Model.Message;
+import Util.MessageShards;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Group commit for message inserts. Concurrent callers of MessageDAO.createMessage put their message on a queue and
+ * wait; a single writer thread takes everything that is queued (up to maxBatchSize, optionally waiting windowMillis
+ * for more to arrive) and inserts it with one JDBC batch in one transaction. Under a burst of posts that turns N
+ * commits into roughly N / batch size commits, while each caller still receives its own generated message_id.
+ *
+ * With the default window of 0 a lone insert is written as soon as the writer is free, so there is no added latency
+ * when traffic is light; batches form naturally while the previous batch is committing. With several message shards
+ * a batch is split by the shard of each author and committed once per shard.
+ *
+ * The queue is bounded. When posts arrive faster than the database commits them for long enough to fill it, further
+ * inserts are rejected straight away (and answered with 503) rather than queueing without limit, where every caller
+ * would wait longer and longer and the waiting messages would use more and more memory.
+ *
+ * Off by default: inserts are then committed one by one by the request that made them, as before. Group commit only
+ * pays off under concurrent bursts of posts, and it moves inserts onto a shared thread and a queue that can reject,
+ * so it is enabled with -Dmessage.groupCommit.enabled=true where that trade is wanted. Tuned with
+ * -Dmessage.groupCommit.maxBatchSize, -Dmessage.groupCommit.windowMillis and -Dmessage.groupCommit.queueCapacity.
+ */
+public class MessageBatchWriter {
+
+    private static final boolean ENABLED =
+            Boolean.parseBoolean(System.getProperty("message.groupCommit.enabled", "false"));
+    private static final int MAX_BATCH_SIZE = Integer.getInteger("message.groupCommit.maxBatchSize", 64);
+    private static final long WINDOW_MILLIS = Long.getLong("message.groupCommit.windowMillis", 0L);
+    private static final int QUEUE_CAPACITY = Integer.getInteger("message.groupCommit.queueCapacity", 10_000);
+
+    /** Queued by shutdown(); the writer stops when it takes this. */
+    private static final PendingInsert STOP = new PendingInsert(null);
+
+    private static volatile MessageBatchWriter instance;
+
+    private final int maxBatchSize;
+    private final long windowNanos;
+    private final LinkedBlockingQueue<PendingInsert> queue;
+    private final Thread writer;
+    private volatile boolean shutdown;
+    private volatile boolean terminated;
+
+    private final LongAdder batchCount = new LongAdder();
+    private final LongAdder rowCount = new LongAdder();
+    private final LongAdder fallbackCount = new LongAdder();
+    private final LongAdder rejectedCount = new LongAdder();
+
+    /**
+     * Starts a writer of its own. The application shares the one from getInstance().
+     * @param queueCapacity the most inserts that may wait for the writer before further ones are rejected.
+     */
+    public MessageBatchWriter(int maxBatchSize, long windowMillis, int queueCapacity) {
+        this.maxBatchSize = maxBatchSize;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.queue = new LinkedBlockingQueue<>(queueCapacity);
+        writer = new Thread(this::run, "message-group-commit");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * @return the shared writer, starting its thread on first use.
+     */
+    public static MessageBatchWriter getInstance() {
+        if (instance == null) {
+            synchronized (MessageBatchWriter.class) {
+                if (instance == null) {
+                    MessageBatchWriter created = new MessageBatchWriter(MAX_BATCH_SIZE, WINDOW_MILLIS, QUEUE_CAPACITY);
+                    // The writer is a daemon thread, so on exit commit what is queued instead of dropping it
+                    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                        created.shutdown();
+                        created.awaitTermination(5, TimeUnit.SECONDS);
+                    }, "message-group-commit-shutdown"));
+                    instance = created;
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Queues the insert and blocks until the batch containing it has been committed.
+     * @return the message including its generated message_id, or null if the insert failed.
+     * @throws RejectedExecutionException if the queue is full or the writer has been shut down.
+     */
+    public Message write(Message message) {
+        try {
+            return submit(message).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RejectedExecutionException) {
+                throw (RejectedExecutionException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Queues the insert without waiting for it.
+     * @return a future completed with the inserted message, or with null if the insert failed. It completes
+     * exceptionally with RejectedExecutionException if the queue is full or the writer has been shut down.
+     */
+    public CompletableFuture<Message> submit(Message message) {
+        PendingInsert pending = new PendingInsert(message);
+        if (shutdown || !queue.offer(pending)) {
+            reject(pending);
+        } else if (terminated && queue.remove(pending)) {
+            // The writer stopped between the check and the offer and will not take it any more
+            reject(pending);
+        }
+        return pending.result;
+    }
+
+    /**
+     * Stops accepting inserts. Those already queued are still written, after which the writer thread exits.
+     */
+    public void shutdown() {
+        shutdown = true;
+        try {
+            queue.put(STOP);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits for the writer to finish after shutdown().
+     * @return true if it finished within the timeout.
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) {
+        try {
+            writer.join(unit.toMillis(timeout));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return !writer.isAlive();
+    }
+
+    private void reject(PendingInsert pending) {
+        rejectedCount.increment();
+        pending.result.completeExceptionally(new RejectedExecutionException(shutdown
+                ? "Group commit has been shut down" : "Group commit queue is full"));
+    }
+
+    private void run() {
+        List<PendingInsert> batch = new ArrayList<>(maxBatchSize);
+        boolean stopping = false;
+        while (!stopping) {
+            try {
+                batch.add(queue.take());
+                if (windowNanos > 0) {
+                    long deadline = System.nanoTime() + windowNanos;
+                    while (batch.size() < maxBatchSize) {
+                        PendingInsert next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                        if (next == null) {
+                            break;
+                        }
+                        batch.add(next);
+                    }
+                }
+                queue.drainTo(batch, maxBatchSize - batch.size());
+                // Whatever was drained along with STOP is still written; anything queued later is rejected below
+                stopping = batch.remove(STOP);
+                if (!batch.isEmpty()) {
+                    writeBatch(batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                stopping = true;
+            } catch (RuntimeException e) {
+                // Never let one bad batch kill the writer; fail its callers and carry on
+                e.printStackTrace();
+                for (PendingInsert pending : batch) {
+                    pending.result.complete(null);
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+        terminated = true;
+        List<PendingInsert> stragglers = new ArrayList<>();
+        queue.drainTo(stragglers);
+        for (PendingInsert pending : stragglers) {
+            reject(pending);
+        }
+    }
+
+    private void writeBatch(List<PendingInsert> batch) {
+        List<Message> messages = new ArrayList<>(batch.size());
+        for (PendingInsert pending : batch) {
+            messages.add(pending.message);
+        }
+
+        Map<Integer, List<Integer>> positionsByShard = MessageDAO.groupByShard(messages);
+        if (positionsByShard.size() == 1) {
+            writeBatch(positionsByShard.keySet().iterator().next(), batch, messages);
+            return;
+        }
+        for (Map.Entry<Integer, List<Integer>> entry : positionsByShard.entrySet()) {
+            List<PendingInsert> shardBatch = new ArrayList<>(entry.getValue().size());
+            List<Message> shardMessages = new ArrayList<>(entry.getValue().size());
+            for (int position : entry.getValue()) {
+                shardBatch.add(batch.get(position));
+                shardMessages.add(messages.get(position));
+            }
+            writeBatch(entry.getKey(), shardBatch, shardMessages);
+        }
+    }
+
+    private void writeBatch(int shard, List<PendingInsert> batch, List<Message> messages) {
+        List<Message> createdMessages = null;
+        try (Connection conn = MessageShards.getConnection(shard)) {
+            conn.setAutoCommit(false);
+            try {
+                createdMessages = MessageDAO.insertMessages(conn, shard, messages);
+                conn.commit();
+            } catch (SQLException e) {
+                // Usually one bad row; the retry below finds out which, but keep the cause in case it is not
+                e.printStackTrace();
+                conn.rollback();
+                createdMessages = null;
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+
+        if (createdMessages != null) {
+            batchCount.increment();
+            rowCount.add(createdMessages.size());
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result.complete(createdMessages.get(i));
+            }
+            return;
+        }
+
+        // One row failed (for example a posted_by that was never registered) and took the batch with it.
+        // Retry row by row so every other caller still gets its message inserted.
+        fallbackCount.increment();
+        for (PendingInsert pending : batch) {
+            pending.result.complete(MessageDAO.insertMessage(pending.message));
+        }
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public long getBatchCount() {
+        return batchCount.sum();
+    }
+
+    public long getRowCount() {
+        return rowCount.sum();
+    }
+
+    public long getFallbackCount() {
+        return fallbackCount.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    private static class PendingInsert {
+        private final Message message;
+        private final CompletableFuture<Message> result = new CompletableFuture<>();
+
+        private PendingInsert(Message message) {
+            this.message = message;
+        }
+    }
+}
@@ -2,158 +2,633 @@ package DAO;
 
 import Model.Message;
 import Util.ConnectionUtil;
+import Util.LatencyHistogram;
+import Util.MessageShards;
+import Util.Metrics;
+import Util.PageCursor;
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.function.IntUnaryOperator;
 
+/**
+ * Messages are stored on the shard of their author (see MessageShards). Lookups by id or by author go to one shard;
+ * listings across all authors query every shard in parallel and merge the results in order.
+ */
 public class MessageDAO {
 
+    /**
+     * Rows fetched per round trip when streaming a full listing. Override with -Dmessage.stream.fetchSize.
+     */
+    private static final int STREAM_FETCH_SIZE = Integer.getInteger("message.stream.fetchSize", 500);
+
+    /**
+     * Latency of each DAO method, exposed on /metrics. forEachMessage includes the time the visitor spends writing.
+     */
+    private static final LatencyHistogram CREATE_TIMER = Metrics.daoTimer("MessageDAO.createMessage");
+    private static final LatencyHistogram INSERT_TIMER = Metrics.daoTimer("MessageDAO.insertMessage");
+    private static final LatencyHistogram INSERT_BATCH_TIMER = Metrics.daoTimer("MessageDAO.insertMessages");
+    private static final LatencyHistogram CREATE_ALL_TIMER = Metrics.daoTimer("MessageDAO.createMessages");
+    private static final LatencyHistogram GET_ALL_TIMER = Metrics.daoTimer("MessageDAO.getAllMessages");
+    private static final LatencyHistogram FOR_EACH_TIMER = Metrics.daoTimer("MessageDAO.forEachMessage");
+    private static final LatencyHistogram GET_BY_ID_TIMER = Metrics.daoTimer("MessageDAO.getMessageById");
+    private static final LatencyHistogram GET_BY_IDS_TIMER = Metrics.daoTimer("MessageDAO.getMessagesByIds");
+    private static final LatencyHistogram DELETE_TIMER = Metrics.daoTimer("MessageDAO.deleteMessageById");
+    private static final LatencyHistogram UPDATE_TIMER = Metrics.daoTimer("MessageDAO.updateMessage");
+    private static final LatencyHistogram GET_BY_ACCOUNT_TIMER = Metrics.daoTimer("MessageDAO.getMessagesByAccountId");
+    private static final LatencyHistogram GET_LATEST_IDS_TIMER = Metrics.daoTimer("MessageDAO.getLatestMessageIds");
+    private static final LatencyHistogram GET_PAGE_TIMER = Metrics.daoTimer("MessageDAO.getMessagesAfter");
+
+    private static final String INSERT_SQL =
+            "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?)";
+    /**
+     * Used instead of INSERT_SQL when ids encode a slot and are therefore reserved before the insert.
+     */
+    private static final String INSERT_WITH_ID_SQL =
+            "INSERT INTO message (message_id, posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?, ?)";
+
+    private static final Comparator<Message> BY_MESSAGE_ID = Comparator.comparingInt(Message::getMessage_id);
+    private static final Comparator<Message> BY_TIME_POSTED =
+            Comparator.comparingLong(Message::getTime_posted_epoch).thenComparing(BY_MESSAGE_ID);
+
+    /**
+     * Inserts a message. With group commit enabled (-Dmessage.groupCommit.enabled=true) the insert is handed to
+     * MessageBatchWriter, which commits it together with whatever other inserts are waiting, in one transaction.
+     * @return the message including its generated message_id, or null if the insert failed.
+     * @throws java.util.concurrent.RejectedExecutionException if the group-commit queue is full.
+     */
     public static Message createMessage(Message message) {
-        Connection conn = ConnectionUtil.getConnection();
-        Message createdMessage = null;
-     
+        long start = System.nanoTime();
         try {
-            String sql = "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?)";
-            PreparedStatement stmt = conn.prepareStatement(sql, PreparedStatement.RETURN_GENERATED_KEYS);
-            stmt.setInt(1, message.getPosted_by());
-            stmt.setString(2, message.getMessage_text());
-            stmt.setLong(3, message.getTime_posted_epoch());
-    
+            if (MessageBatchWriter.isEnabled()) {
+                return MessageBatchWriter.getInstance().write(message);
+            }
+            return insertMessage(message);
+        } finally {
+            CREATE_TIMER.recordSince(start);
+        }
+    }
+
+    /**
+     * Inserts messages that arrived together, for example from an import, with one JDBC batch in one transaction.
+     * Unlike createMessage this bypasses the group-commit queue, since the caller already has a full batch. If the
+     * batch fails (one bad row rolls back all of them) the rows are retried one by one, so every other row is still
+     * inserted. Messages by authors on different shards are committed in one transaction per shard.
+     * @return the inserted messages in the order given, with null for any message that could not be inserted.
+     */
+    public static List<Message> createMessages(List<Message> messages) {
+        Map<Integer, List<Integer>> positionsByShard = groupByShard(messages);
+        if (positionsByShard.size() <= 1) {
+            return createMessages(positionsByShard.isEmpty() ? 0 : positionsByShard.keySet().iterator().next(),
+                    messages);
+        }
+        Message[] createdMessages = new Message[messages.size()];
+        for (Map.Entry<Integer, List<Integer>> entry : positionsByShard.entrySet()) {
+            List<Integer> positions = entry.getValue();
+            List<Message> shardMessages = new ArrayList<>(positions.size());
+            for (int position : positions) {
+                shardMessages.add(messages.get(position));
+            }
+            List<Message> created = createMessages(entry.getKey(), shardMessages);
+            for (int i = 0; i < positions.size(); i++) {
+                createdMessages[positions.get(i)] = created.get(i);
+            }
+        }
+        return Arrays.asList(createdMessages);
+    }
+
+    private static List<Message> createMessages(int shard, List<Message> messages) {
+        long start = System.nanoTime();
+        try (Connection conn = MessageShards.getConnection(shard)) {
+            conn.setAutoCommit(false);
+            try {
+                List<Message> createdMessages = insertMessages(conn, shard, messages);
+                conn.commit();
+                return createdMessages;
+            } catch (SQLException e) {
+                conn.rollback();
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        } finally {
+            CREATE_ALL_TIMER.recordSince(start);
+        }
+
+        List<Message> createdMessages = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            createdMessages.add(insertMessage(message));
+        }
+        return createdMessages;
+    }
+
+    /**
+     * Inserts a single message in its own autocommit transaction.
+     * @return the message including its generated message_id, or null if the insert failed.
+     */
+    static Message insertMessage(Message message) {
+        Message createdMessage = null;
+
+        int shard = MessageShards.shardOfAccount(message.getPosted_by());
+        String sql = MessageShards.isSlotted() ? INSERT_WITH_ID_SQL : INSERT_SQL;
+        long start = System.nanoTime();
+        try (Connection conn = MessageShards.getConnection(shard);
+             PreparedStatement stmt = conn.prepareStatement(sql, PreparedStatement.RETURN_GENERATED_KEYS)) {
+            int[] messageIds = reserveMessageIds(conn, shard, List.of(message));
+            bindInsert(stmt, messageIds, 0, message);
+
             int rowsAffected = stmt.executeUpdate();
-    
-            if (rowsAffected > 0) {
-                ResultSet rs = stmt.getGeneratedKeys();
-                if (rs.next()) {
-                    int generatedId = rs.getInt(1); // Retrieve the generated message_id
-                    createdMessage = new Message(generatedId, message.getPosted_by(), message.getMessage_text(), message.getTime_posted_epoch());
+
+            if (rowsAffected > 0 && messageIds != null) {
+                createdMessage = new Message(messageIds[0], message.getPosted_by(), message.getMessage_text(),
+                        message.getTime_posted_epoch());
+            } else if (rowsAffected > 0) {
+                try (ResultSet rs = stmt.getGeneratedKeys()) {
+                    if (rs.next()) {
+                        int generatedId = rs.getInt(1); // Retrieve the generated message_id
+                        createdMessage = new Message(generatedId, message.getPosted_by(), message.getMessage_text(), message.getTime_posted_epoch());
+                    }
                 }
             }
         } catch (SQLException e) {
             e.printStackTrace();
+        } finally {
+            ConnectionUtil.recordWrite();
+            INSERT_TIMER.recordSince(start);
         }
         return createdMessage;  // Return the created message object
     }
-    
-    
 
+
+    /**
+     * Inserts all messages with one JDBC batch in a single transaction: either every row is inserted or none is.
+     * @param conn a connection to the shard of every message's author, with autocommit disabled; the caller commits
+     * or rolls back.
+     * @return the inserted messages including their generated ids, in the order given.
+     * @throws SQLException if any row fails, in which case the caller must roll back.
+     */
+    static List<Message> insertMessages(Connection conn, int shard, List<Message> messages) throws SQLException {
+        List<Message> createdMessages = new ArrayList<>(messages.size());
+
+        String sql = MessageShards.isSlotted() ? INSERT_WITH_ID_SQL : INSERT_SQL;
+        long start = System.nanoTime();
+        try (PreparedStatement stmt = conn.prepareStatement(sql, PreparedStatement.RETURN_GENERATED_KEYS)) {
+            int[] messageIds = reserveMessageIds(conn, shard, messages);
+            for (int i = 0; i < messages.size(); i++) {
+                bindInsert(stmt, messageIds, i, messages.get(i));
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+
+            if (messageIds != null) {
+                for (int i = 0; i < messages.size(); i++) {
+                    Message message = messages.get(i);
+                    createdMessages.add(new Message(messageIds[i], message.getPosted_by(), message.getMessage_text(),
+                            message.getTime_posted_epoch()));
+                }
+                return createdMessages;
+            }
+
+            // Generated keys come back in the order the rows were added to the batch
+            try (ResultSet rs = stmt.getGeneratedKeys()) {
+                for (Message message : messages) {
+                    if (!rs.next()) {
+                        throw new SQLException("Batch insert returned fewer generated keys than rows");
+                    }
+                    createdMessages.add(new Message(rs.getInt(1), message.getPosted_by(), message.getMessage_text(),
+                            message.getTime_posted_epoch()));
+                }
+            }
+        } finally {
+            ConnectionUtil.recordWrite();
+            INSERT_BATCH_TIMER.recordSince(start);
+        }
+        return createdMessages;
+    }
+
+    /**
+     * @return ids reserved in each author's slot when ids are slotted, or null to let the table generate them.
+     */
+    private static int[] reserveMessageIds(Connection conn, int shard, List<Message> messages) throws SQLException {
+        if (!MessageShards.isSlotted()) {
+            return null;
+        }
+        List<Integer> postedBy = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            postedBy.add(message.getPosted_by());
+        }
+        return MessageShards.nextMessageIds(shard == 0 ? conn : null, postedBy);
+    }
+
+    private static void bindInsert(PreparedStatement stmt, int[] messageIds, int index, Message message)
+            throws SQLException {
+        int i = 1;
+        if (messageIds != null) {
+            stmt.setInt(i++, messageIds[index]);
+        }
+        stmt.setInt(i++, message.getPosted_by());
+        stmt.setString(i++, message.getMessage_text());
+        stmt.setLong(i, message.getTime_posted_epoch());
+    }
+
+    /**
+     * @return the positions of the messages in the list, by the shard of their author, primary first.
+     */
+    static Map<Integer, List<Integer>> groupByShard(List<Message> messages) {
+        Map<Integer, List<Integer>> positionsByShard = new TreeMap<>();
+        for (int i = 0; i < messages.size(); i++) {
+            int shard = MessageShards.shardOfAccount(messages.get(i).getPosted_by());
+            positionsByShard.computeIfAbsent(shard, k -> new ArrayList<>()).add(i);
+        }
+        return positionsByShard;
+    }
+
+    /**
+     * @return the keys by the shard that shardOf maps them to, primary first.
+     */
+    private static Map<Integer, List<Integer>> groupByShard(Collection<Integer> keys, IntUnaryOperator shardOf) {
+        Map<Integer, List<Integer>> keysByShard = new TreeMap<>();
+        for (int key : keys) {
+            keysByShard.computeIfAbsent(shardOf.applyAsInt(key), k -> new ArrayList<>()).add(key);
+        }
+        return keysByShard;
+    }
+
+    /**
+     * Merges lists that are each sorted by order into one sorted list of at most limit elements.
+     */
+    private static <T> List<T> mergeSorted(List<List<T>> sortedLists, Comparator<? super T> order, int limit) {
+        if (sortedLists.size() == 1) {
+            List<T> only = sortedLists.get(0);
+            return only.size() <= limit ? only : new ArrayList<>(only.subList(0, limit));
+        }
+        List<T> merged = new ArrayList<>();
+        PriorityQueue<PeekingIterator<T>> heads = new PriorityQueue<>((a, b) -> order.compare(a.peek(), b.peek()));
+        for (List<T> sortedList : sortedLists) {
+            if (!sortedList.isEmpty()) {
+                heads.add(new PeekingIterator<>(sortedList.iterator()));
+            }
+        }
+        while (!heads.isEmpty() && merged.size() < limit) {
+            PeekingIterator<T> head = heads.poll();
+            merged.add(head.next());
+            if (head.hasNext()) {
+                heads.add(head);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Reads every shard in parallel and merges the rows in message_id order, the order of a single table's primary
+     * key.
+     */
     public List<Message> getAllMessages() {
-        Connection conn = ConnectionUtil.getConnection();
-        List<Message> messages = new ArrayList<>();
-    
+        long start = System.nanoTime();
         try {
-            String sql = "SELECT * FROM message";
-            PreparedStatement stmt = conn.prepareStatement(sql);
-    
-            ResultSet rs = stmt.executeQuery();
-    
+            return mergeSorted(MessageShards.scatter(MessageShards.getAllShards(), MessageDAO::getAllMessages),
+                    BY_MESSAGE_ID, Integer.MAX_VALUE);
+        } finally {
+            GET_ALL_TIMER.recordSince(start);
+        }
+    }
+
+    private static List<Message> getAllMessages(int shard) {
+        List<Message> messages = new ArrayList<>();
+
+        String sql = "SELECT * FROM message ORDER BY message_id";
+        try (Connection conn = MessageShards.getReadConnection(shard);
+             PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+
             while (rs.next()) {
-                // Correct parameter ordering in the Message constructor
-                Message message = new Message(
-                    rs.getInt("message_id"),
-                    rs.getInt("posted_by"),           // 'posted_by' should be the second parameter
-                    rs.getString("message_text"),      // 'message_text' should be the third parameter
-                    rs.getLong("time_posted_epoch")
-                );
-                messages.add(message);
-            }
-    
+                messages.add(mapMessage(rs));
+            }
+
         } catch (SQLException e) {
             e.printStackTrace();
         }
-    
+
         return messages;
     }
-    
+
+    /**
+     * Streams every message to the visitor as it is read, instead of building a list. The query runs with H2's lazy
+     * execution and a bounded fetch size, so neither the database nor the caller holds the whole table in memory.
+     * With several shards one such query is open on each, and the visitor always gets the lowest message_id among
+     * their current rows. The pooled connections stay borrowed until the visitor has seen the last row.
+     * @param visitor receives each message in message_id order.
+     * @throws IOException if the query fails, with the SQLException as its cause, or if the visitor fails, for example
+     * because the client went away. Either way the visitor has only seen part of the table.
+     */
+    public static void forEachMessage(MessageVisitor visitor) throws IOException {
+        String sql = "SELECT * FROM message ORDER BY message_id";
+        long start = System.nanoTime();
+        List<ShardCursor> cursors = new ArrayList<>();
+        try {
+            PriorityQueue<ShardCursor> heads =
+                    new PriorityQueue<>((a, b) -> BY_MESSAGE_ID.compare(a.current, b.current));
+            for (int shard : MessageShards.getAllShards()) {
+                ShardCursor cursor = new ShardCursor(MessageShards.getReadConnection(shard));
+                cursors.add(cursor);
+                setLazyQueryExecution(cursor.conn, true);
+                cursor.stmt = cursor.conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY,
+                        ResultSet.CONCUR_READ_ONLY);
+                cursor.stmt.setFetchSize(STREAM_FETCH_SIZE);
+                cursor.rs = cursor.stmt.executeQuery();
+                if (cursor.advance()) {
+                    heads.add(cursor);
+                }
+            }
+
+            while (!heads.isEmpty()) {
+                ShardCursor cursor = heads.poll();
+                visitor.visit(cursor.current);
+                if (cursor.advance()) {
+                    heads.add(cursor);
+                }
+            }
+
+        } catch (SQLException e) {
+            // Not swallowed like the other reads: the caller has already acted on the rows before the failure
+            throw new IOException("Reading messages failed", e);
+        } finally {
+            for (ShardCursor cursor : cursors) {
+                cursor.close();
+            }
+            FOR_EACH_TIMER.recordSince(start);
+        }
+    }
+
+    private static void setLazyQueryExecution(Connection conn, boolean lazy) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("SET LAZY_QUERY_EXECUTION " + (lazy ? "TRUE" : "FALSE"));
+        }
+    }
 
     public static Message getMessageById(int messageId) {
-        Connection conn = ConnectionUtil.getConnection();
         Message message = null;
 
-        try {
-            String sql = "SELECT * FROM message WHERE message_id = ?";
-            PreparedStatement stmt = conn.prepareStatement(sql);
+        String sql = "SELECT * FROM message WHERE message_id = ?";
+        long start = System.nanoTime();
+        try (Connection conn = MessageShards.getReadConnection(MessageShards.shardOfMessage(messageId));
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setInt(1, messageId);
 
-            ResultSet rs = stmt.executeQuery();
-
-            if (rs.next()) {
-                message = new Message(
-                    rs.getInt("message_id"),
-                    rs.getInt("posted_by"),
-                    rs.getString("message_text"),
-                    rs.getLong("time_posted_epoch")
-                );
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    message = mapMessage(rs);
+                }
             }
 
         } catch (SQLException e) {
             e.printStackTrace();
+        } finally {
+            GET_BY_ID_TIMER.recordSince(start);
         }
         return message;
     }
 
+    /**
+     * Fetches any number of messages in one round trip per shard holding any of them, made in parallel. The ids are
+     * bound as a single array parameter rather than expanded into an IN list, so the SQL text is the same for every
+     * call and its prepared statement is reused.
+     * @return the messages that exist, in no particular order.
+     */
+    public static List<Message> getMessagesByIds(Collection<Integer> messageIds) {
+        List<Message> messages = new ArrayList<>(messageIds.size());
+
+        long start = System.nanoTime();
+        try {
+            Map<Integer, List<Integer>> idsByShard = groupByShard(messageIds, MessageShards::shardOfMessage);
+            for (List<Message> shardMessages : MessageShards.scatter(new ArrayList<>(idsByShard.keySet()),
+                    shard -> getMessagesByIds(shard, idsByShard.get(shard)))) {
+                messages.addAll(shardMessages);
+            }
+        } finally {
+            GET_BY_IDS_TIMER.recordSince(start);
+        }
+        return messages;
+    }
+
+    private static List<Message> getMessagesByIds(int shard, List<Integer> messageIds) {
+        List<Message> messages = new ArrayList<>(messageIds.size());
+
+        String sql = "SELECT * FROM message WHERE message_id = ANY(?)";
+        try (Connection conn = MessageShards.getReadConnection(shard);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setArray(1, conn.createArrayOf("INTEGER", messageIds.toArray()));
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    messages.add(mapMessage(rs));
+                }
+            }
+
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return messages;
+    }
+
+    /**
+     * Deletes the message and returns the row as it was, in a single statement: H2's OLD TABLE delta table yields
+     * the deleted row, so there is no separate SELECT and no window for another writer to change it in between.
+     * @return the deleted message, or null if there was no such message.
+     */
     public static Message deleteMessageById(int messageId) {
-        Connection conn = ConnectionUtil.getConnection();
-        Message deletedMessage = getMessageById(messageId);
+        return deleteMessageById(messageId, null);
+    }
 
-        if (deletedMessage != null) {
-            try {
-                String sql = "DELETE FROM message WHERE message_id = ?";
-                PreparedStatement stmt = conn.prepareStatement(sql);
-                stmt.setInt(1, messageId);
+    /**
+     * Deletes the message only if postedBy wrote it, checked by the DELETE itself so that nothing can change the
+     * author in between.
+     * @param postedBy the author the message must have, or null to delete it whoever wrote it.
+     * @return the deleted message, or null if there was no such message by that author.
+     */
+    public static Message deleteMessageById(int messageId, Integer postedBy) {
+        Message deletedMessage = null;
 
-                stmt.executeUpdate();
+        String sql = "SELECT * FROM OLD TABLE (DELETE FROM message WHERE message_id = ?"
+                + (postedBy != null ? " AND posted_by = ?)" : ")");
+        long start = System.nanoTime();
+        try (Connection conn = MessageShards.getConnection(MessageShards.shardOfMessage(messageId));
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, messageId);
+            if (postedBy != null) {
+                stmt.setInt(2, postedBy);
+            }
 
-            } catch (SQLException e) {
-                e.printStackTrace();
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    deletedMessage = mapMessage(rs);
+                }
             }
+
+        } catch (SQLException e) {
+            e.printStackTrace();
+        } finally {
+            ConnectionUtil.recordWrite();
+            DELETE_TIMER.recordSince(start);
         }
 
         return deletedMessage;
     }
 
+    /**
+     * Updates the message text and returns the updated row in a single statement, using H2's FINAL TABLE delta table.
+     * @return the updated message, or null if there was no such message.
+     */
     public static Message updateMessage(int messageId, String newMessageText) {
-        Connection conn = ConnectionUtil.getConnection();
+        return updateMessage(messageId, null, newMessageText);
+    }
+
+    /**
+     * Updates the message text only if postedBy wrote the message, checked by the UPDATE itself.
+     * @param postedBy the author the message must have, or null to update it whoever wrote it.
+     * @return the updated message, or null if there was no such message by that author.
+     */
+    public static Message updateMessage(int messageId, Integer postedBy, String newMessageText) {
         Message updatedMessage = null;
 
-        try {
-            String sql = "UPDATE message SET message_text = ? WHERE message_id = ?";
-            PreparedStatement stmt = conn.prepareStatement(sql);
+        String sql = "SELECT * FROM FINAL TABLE (UPDATE message SET message_text = ? WHERE message_id = ?"
+                + (postedBy != null ? " AND posted_by = ?)" : ")");
+        long start = System.nanoTime();
+        try (Connection conn = MessageShards.getConnection(MessageShards.shardOfMessage(messageId));
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setString(1, newMessageText);
             stmt.setInt(2, messageId);
+            if (postedBy != null) {
+                stmt.setInt(3, postedBy);
+            }
 
-            int rowsAffected = stmt.executeUpdate();
-            if (rowsAffected > 0) {
-                updatedMessage = getMessageById(messageId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    updatedMessage = mapMessage(rs);
+                }
             }
 
         } catch (SQLException e) {
             e.printStackTrace();
+        } finally {
+            ConnectionUtil.recordWrite();
+            UPDATE_TIMER.recordSince(start);
         }
         return updatedMessage;
     }
 
     public static List<Message> getMessagesByAccountId(int accountId) {
-        Connection conn = ConnectionUtil.getConnection();
         List<Message> messages = new ArrayList<>();
 
-        try {
-            String sql = "SELECT * FROM message WHERE posted_by = ?";
-            PreparedStatement stmt = conn.prepareStatement(sql);
+        String sql = "SELECT * FROM message WHERE posted_by = ?";
+        long start = System.nanoTime();
+        try (Connection conn = MessageShards.getReadConnection(MessageShards.shardOfAccount(accountId));
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setInt(1, accountId);
 
-            ResultSet rs = stmt.executeQuery();
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    messages.add(mapMessage(rs));
+                }
+            }
+
+        } catch (SQLException e) {
+            e.printStackTrace();
+        } finally {
+            GET_BY_ACCOUNT_TIMER.recordSince(start);
+        }
+        return messages;
+    }
 
-            while (rs.next()) {
-                Message message = new Message(
-                    rs.getInt("message_id"),
-                    rs.getInt("posted_by"),
-                    rs.getString("message_text"),
-                    rs.getLong("time_posted_epoch")
-                );
-                messages.add(message);
+    /**
+     * Reads the ids of the newest messages by any of the given authors, for building a timeline. The authors are
+     * bound as one array parameter, so this is a single indexed lookup per shard rather than a join; the shards are
+     * read in parallel and their newest ids merged.
+     * @param postedBy the authors; may be empty.
+     * @param limit the maximum number of ids to return.
+     * @return up to limit message ids, newest (highest) first.
+     */
+    public static List<Integer> getLatestMessageIds(Collection<Integer> postedBy, int limit) {
+        if (postedBy.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        long start = System.nanoTime();
+        try {
+            Map<Integer, List<Integer>> authorsByShard = groupByShard(postedBy, MessageShards::shardOfAccount);
+            return mergeSorted(MessageShards.scatter(new ArrayList<>(authorsByShard.keySet()),
+                    shard -> getLatestMessageIds(shard, authorsByShard.get(shard), limit)),
+                    Comparator.reverseOrder(), limit);
+        } finally {
+            GET_LATEST_IDS_TIMER.recordSince(start);
+        }
+    }
+
+    private static List<Integer> getLatestMessageIds(int shard, List<Integer> postedBy, int limit) {
+        List<Integer> messageIds = new ArrayList<>();
+
+        String sql = "SELECT message_id FROM message WHERE posted_by = ANY(?) ORDER BY message_id DESC LIMIT ?";
+        try (Connection conn = MessageShards.getReadConnection(shard);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setArray(1, conn.createArrayOf("INTEGER", postedBy.toArray()));
+            stmt.setInt(2, limit);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    messageIds.add(rs.getInt(1));
+                }
+            }
+
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return messageIds;
+    }
+
+    /**
+     * Keyset pagination: seeks directly past the cursor on the ordering's index instead of scanning with OFFSET, so
+     * every page costs the same no matter how deep into the table it is. One account's messages come from its shard;
+     * a page of all messages takes up to limit rows from every shard in parallel and keeps the first limit of them.
+     * @param postedBy restrict to one account's messages, or null for all messages.
+     * @param after the position to continue from; use PageCursor.first(order) for the first page.
+     * @param limit the maximum number of rows to return.
+     * @return up to limit messages following the cursor, in the cursor's order.
+     */
+    public static List<Message> getMessagesAfter(Integer postedBy, PageCursor after, int limit) {
+        long start = System.nanoTime();
+        try {
+            List<Integer> shards = postedBy != null
+                    ? List.of(MessageShards.shardOfAccount(postedBy))
+                    : MessageShards.getAllShards();
+            return mergeSorted(MessageShards.scatter(shards, shard -> getMessagesAfter(shard, postedBy, after, limit)),
+                    after.getOrder() == PageCursor.Order.MESSAGE_ID ? BY_MESSAGE_ID : BY_TIME_POSTED, limit);
+        } finally {
+            GET_PAGE_TIMER.recordSince(start);
+        }
+    }
+
+    private static List<Message> getMessagesAfter(int shard, Integer postedBy, PageCursor after, int limit) {
+        List<Message> messages = new ArrayList<>();
+
+        try (Connection conn = MessageShards.getReadConnection(shard);
+             PreparedStatement stmt = conn.prepareStatement(getMessagesAfterSql(postedBy, after))) {
+            bindMessagesAfter(stmt, postedBy, after, limit);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    messages.add(mapMessage(rs));
+                }
             }
 
         } catch (SQLException e) {
@@ -161,4 +636,138 @@ public class MessageDAO {
         }
         return messages;
     }
-}
\ No newline at end of file
+
+    /**
+     * Runs the query of getMessagesAfter against one shard under EXPLAIN ANALYZE, to check that a page is an index
+     * seek rather than a scan.
+     * @return H2's plan, including the index chosen and the number of rows it read.
+     */
+    public static String explainMessagesAfter(int shard, Integer postedBy, PageCursor after, int limit) {
+        String sql = "EXPLAIN ANALYZE " + getMessagesAfterSql(postedBy, after);
+        try (Connection conn = MessageShards.getConnection(shard);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            bindMessagesAfter(stmt, postedBy, after, limit);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getString(1);
+                }
+            }
+
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * The seek past the cursor is spelled out column by column because H2 does not turn a row-value comparison such
+     * as (time_posted_epoch, message_id) > (?, ?) into an index range and reads the whole index instead. The leading
+     * time_posted_epoch >= ? bounds the range; the rest skips the cursor's own rows with the same timestamp.
+     *
+     * A per-account page also orders by posted_by, which is constant in the result, so that H2 reads the rows straight
+     * off (posted_by, time_posted_epoch, message_id) or (posted_by, message_id) in order instead of sorting every
+     * message of the account.
+     */
+    private static String getMessagesAfterSql(Integer postedBy, PageCursor after) {
+        String accountFilter = postedBy != null ? "posted_by = ? AND " : "";
+        String accountOrder = postedBy != null ? "posted_by, " : "";
+        return after.getOrder() == PageCursor.Order.MESSAGE_ID
+                ? "SELECT * FROM message WHERE " + accountFilter + "message_id > ? "
+                        + "ORDER BY " + accountOrder + "message_id LIMIT ?"
+                : "SELECT * FROM message WHERE " + accountFilter
+                        + "time_posted_epoch >= ? AND (time_posted_epoch > ? OR message_id > ?) "
+                        + "ORDER BY " + accountOrder + "time_posted_epoch, message_id LIMIT ?";
+    }
+
+    private static void bindMessagesAfter(PreparedStatement stmt, Integer postedBy, PageCursor after, int limit)
+            throws SQLException {
+        int i = 1;
+        if (postedBy != null) {
+            stmt.setInt(i++, postedBy);
+        }
+        if (after.getOrder() == PageCursor.Order.TIME_POSTED_EPOCH) {
+            stmt.setLong(i++, after.getTimePostedEpoch());
+            stmt.setLong(i++, after.getTimePostedEpoch());
+        }
+        stmt.setInt(i++, after.getMessageId());
+        stmt.setInt(i, limit);
+    }
+
+    private static Message mapMessage(ResultSet rs) throws SQLException {
+        return new Message(
+            rs.getInt("message_id"),
+            rs.getInt("posted_by"),
+            rs.getString("message_text"),
+            rs.getLong("time_posted_epoch")
+        );
+    }
+
+    /**
+     * One shard's open, lazily read listing in forEachMessage, positioned on its current row.
+     */
+    private static class ShardCursor {
+        private final Connection conn;
+        private PreparedStatement stmt;
+        private ResultSet rs;
+        private Message current;
+
+        private ShardCursor(Connection conn) {
+            this.conn = conn;
+        }
+
+        private boolean advance() throws SQLException {
+            current = rs.next() ? mapMessage(rs) : null;
+            return current != null;
+        }
+
+        private void close() {
+            if (conn == null) {
+                return;
+            }
+            try {
+                if (rs != null) {
+                    rs.close();
+                }
+                if (stmt != null) {
+                    stmt.close();
+                }
+                // The connection goes back to the pool, so restore the session default for the next borrower
+                setLazyQueryExecution(conn, false);
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            try {
+                conn.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static class PeekingIterator<T> implements Iterator<T> {
+        private final Iterator<T> iterator;
+        private T next;
+
+        private PeekingIterator(Iterator<T> iterator) {
+            this.iterator = iterator;
+            this.next = iterator.next();
+        }
+
+        private T peek() {
+            return next;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public T next() {
+            T current = next;
+            next = iterator.hasNext() ? iterator.next() : null;
+            return current;
+        }
+    }
+}
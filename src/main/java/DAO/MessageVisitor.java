@@ -0,0 +1,13 @@
+package DAO;
+
+import Model.Message;
+import java.io.IOException;
+
+/**
+ * Receives messages one at a time as MessageDAO reads them from an open ResultSet, so that a caller can write each
+ * row out (for example to an HTTP response) without first collecting the whole table into a list.
+ */
+@FunctionalInterface
+public interface MessageVisitor {
+    void visit(Message message) throws IOException;
+}
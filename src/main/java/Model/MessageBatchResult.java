@@ -0,0 +1,52 @@
+package Model;
+
+/**
+ * This is a class that models the outcome of one message in a batch create, returned in the same position as the
+ * message in the request.
+ */
+public class MessageBatchResult {
+    /**
+     * 200 if the message was created, 400 if it was rejected, with the same meaning as for POST /messages.
+     */
+    public int status;
+    /**
+     * The created message including its generated message_id, or null if it was not created.
+     */
+    public Message message;
+
+    /**
+     * A default, no-args constructor, as well as correctly formatted getters and setters, are needed for
+     * Jackson Objectmapper to work.
+     */
+    public MessageBatchResult() {
+    }
+
+    public MessageBatchResult(int status, Message message) {
+        this.status = status;
+        this.message = message;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public void setStatus(int status) {
+        this.status = status;
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    public void setMessage(Message message) {
+        this.message = message;
+    }
+
+    @Override
+    public String toString() {
+        return "MessageBatchResult{" +
+                "status=" + status +
+                ", message=" + message +
+                '}';
+    }
+}
@@ -0,0 +1,53 @@
+package Model;
+
+import java.util.List;
+
+/**
+ * This is a class that models the result of fetching several messages by id in one request.
+ */
+public class MessageLookup {
+    /**
+     * The messages that were found, in the order their ids were requested.
+     */
+    public List<Message> messages;
+    /**
+     * The requested ids for which no message exists, in the order they were requested.
+     */
+    public List<Integer> missing_ids;
+
+    /**
+     * A default, no-args constructor, as well as correctly formatted getters and setters, are needed for
+     * Jackson Objectmapper to work.
+     */
+    public MessageLookup() {
+    }
+
+    public MessageLookup(List<Message> messages, List<Integer> missing_ids) {
+        this.messages = messages;
+        this.missing_ids = missing_ids;
+    }
+
+    public List<Message> getMessages() {
+        return messages;
+    }
+
+    public void setMessages(List<Message> messages) {
+        this.messages = messages;
+    }
+
+    public List<Integer> getMissing_ids() {
+        return missing_ids;
+    }
+
+    public void setMissing_ids(List<Integer> missing_ids) {
+        this.missing_ids = missing_ids;
+    }
+
+    @Override
+    public String toString() {
+        return "MessageLookup{" +
+                "messages=" + messages +
+                ", missing_ids=" + missing_ids +
+                '}';
+    }
+}
@@ -2,66 +2,257 @@ package Service;
 
 import DAO.AccountDAO;
 import Model.Account;
-
+import Util.ConnectionUtil;
+import Util.LruCache;
+import Util.PasswordHasher;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
 
 public class AccountService {
 
     private static AccountDAO accountDAO;
 
+    /**
+     * Accounts are never deleted, and only updated here when a password is re-hashed, which refreshes both caches, so
+     * a cached account stays valid for the life of the service. Both caches share the same bound, overridable with
+     * -Daccount.cache.maxSize.
+     */
+    private static final int CACHE_MAX_SIZE = Integer.getInteger("account.cache.maxSize", 10_000);
+    /**
+     * How long an account_id that was not found is remembered. Kept short because the id may be registered soon
+     * after; override with -Daccount.cache.negativeTtlMillis.
+     */
+    private static final long NEGATIVE_TTL_MILLIS = Long.getLong("account.cache.negativeTtlMillis", 5_000L);
+
+    private final LruCache<Integer, Account> accountsById = new LruCache<>(CACHE_MAX_SIZE);
+    private final LruCache<String, Account> accountsByUsername = new LruCache<>(CACHE_MAX_SIZE);
+    /**
+     * account_ids known not to exist, mapped to the time at which that knowledge expires.
+     */
+    private final LruCache<Integer, Long> missingAccountIds = new LruCache<>(CACHE_MAX_SIZE);
+
+    /**
+     * How long a successful login lets the same password skip the slow hash check. Override with
+     * -Dauth.verifiedCache.ttlMillis; 0 turns the cache off.
+     */
+    private static final long VERIFIED_TTL_MILLIS = Long.getLong("auth.verifiedCache.ttlMillis", 60_000L);
+    /**
+     * Recent successful logins by account_id. Each holds an HMAC of the stored hash and the password under a key that
+     * only exists in this process's memory, never the password itself, and stops matching as soon as the stored hash
+     * changes.
+     */
+    private final LruCache<Integer, VerifiedCredential> verifiedCredentials = new LruCache<>(CACHE_MAX_SIZE);
+    private final SecretKeySpec credentialKey;
+
     public AccountService() {
         AccountService.accountDAO = new AccountDAO();
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        this.credentialKey = new SecretKeySpec(key, "HmacSHA256");
     }
 
     public Account createAccount(Account account) {
-        
+        if (account.getPassword() == null) {
+            return null;
+        }
+        return createAccount(account, PasswordHasher.hash(account.getPassword()));
+    }
+
+    /**
+     * Creates an account whose password has already been hashed, so the caller can choose where the hashing runs.
+     * @param passwordHash PasswordHasher.hash of the account's password.
+     * @return the new account, carrying the password as given rather than its hash.
+     */
+    public Account createAccount(Account account, String passwordHash) {
+
         // Ensure that the account details are valid before calling DAO to persist
-        if (account.getUsername() == null || account.getUsername().isBlank() || 
+        if (account.getUsername() == null || account.getUsername().isBlank() ||
             account.getPassword() == null || account.getPassword().length() < 4) {
             return null;
         }
 
         // Check if the username already exists
-        if (accountDAO.getAccountByUsername(account.getUsername()) != null) {
+        if (getAccountByUsername(account.getUsername()) != null) {
             return null;  // Username already taken
         }
 
         // Delegate account creation to the DAO
-        return accountDAO.createAccount(account);
+        Account createdAccount = accountDAO.createAccount(
+                new Account(account.getUsername(), passwordHash));
+        if (createdAccount == null) {
+            return null;
+        }
+        missingAccountIds.invalidate(createdAccount.getAccount_id());
+        cache(createdAccount);
+        rememberVerified(createdAccount, account.getPassword()); // Registering is usually followed by logging in
+        return new Account(createdAccount.getAccount_id(), createdAccount.getUsername(), account.getPassword());
     }
 
-    
+
 
     public Account login(String username, String password) {
-        Account account = getAccountByUsername(username);
-        if (account != null && account.getPassword().equals(password)) { // Ensure passwords are being checked properly
-            return account;
-        }
-        return null; // User not found or password incorrect
+        return verifyLogin(username, password);
     }
-    
-    
 
+
+
+    /**
+     * Checks a username and password, all on the calling thread. The controller instead runs the two steps below on
+     * separate executors, so the slow hash check cannot hold up account lookups.
+     */
     public Account verifyLogin(String username, String password) {
-        Account account = accountDAO.getAccountByUsername(username);  // Fetch the account by username
-    
-        if (account != null && account.getPassword().equals(password)) {
-            return account;  // Return account if the password matches
+        Account account = getAccountByUsername(username);  // Fetch the account by username
+        if (account == null) {
+            return null;  // Return null if the account does not exist
+        }
+        Account verified = verifyRecentLogin(account, password);
+        return verified != null ? verified : verifyPassword(account, password);
+    }
+
+    /**
+     * The fast path of a login: succeeds only if this password was verified for this account within the last
+     * VERIFIED_TTL_MILLIS. Costs one HMAC.
+     * @param account the account as returned by getAccountByUsername.
+     * @return the account to return to the client, or null if the slow check is needed.
+     */
+    public Account verifyRecentLogin(Account account, String password) {
+        VerifiedCredential verified = verifiedCredentials.get(account.getAccount_id());
+        if (verified == null || verified.expiresAt <= System.currentTimeMillis() || password == null) {
+            return null;
+        }
+        if (!MessageDigest.isEqual(verified.digest, credentialDigest(account.getPassword(), password))) {
+            return null;
+        }
+        return new Account(account.getAccount_id(), account.getUsername(), password);
+    }
+
+    /**
+     * The slow path of a login: checks the password against the stored hash, which burns CPU for tens of
+     * milliseconds. A password still stored in plaintext, or hashed with fewer iterations than now, is re-hashed.
+     * @param account the account as returned by getAccountByUsername.
+     * @return the account to return to the client, or null if the password is wrong.
+     */
+    public Account verifyPassword(Account account, String password) {
+        if (!PasswordHasher.verify(password, account.getPassword())) {
+            return null;
         }
-    
-        return null;  // Return null if the account does not exist or the password is incorrect
+        Account stored = account;
+        if (PasswordHasher.needsRehash(account.getPassword())) {
+            String rehashed = PasswordHasher.hash(password);
+            if (accountDAO.updatePassword(account.getAccount_id(), rehashed)) {
+                stored = new Account(account.getAccount_id(), account.getUsername(), rehashed);
+                cache(stored);
+            }
+        }
+        rememberVerified(stored, password);
+        return new Account(account.getAccount_id(), account.getUsername(), password);
     }
-        
 
-    public static boolean isAccountExist(int accountId) {
-        // Check if the account exists by delegating to the DAO
-        return accountDAO.isAccountExist(accountId);
+    private void rememberVerified(Account stored, String password) {
+        if (VERIFIED_TTL_MILLIS > 0) {
+            byte[] digest = credentialDigest(stored.getPassword(), password);
+            verifiedCredentials.put(stored.getAccount_id(),
+                    new VerifiedCredential(digest, System.currentTimeMillis() + VERIFIED_TTL_MILLIS));
+        }
+    }
+
+    private byte[] credentialDigest(String storedPassword, String password) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(credentialKey);
+            mac.update(storedPassword.getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) 0);
+            return mac.doFinal(password.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e); // Every JDK ships it
+        }
+    }
+
+
+    /**
+     * Answers from the cache once warm: known accounts and recently missed ids never reach the database.
+     */
+    public boolean isAccountExist(int accountId) {
+        return getAccountById(accountId) != null;
     }
 
     public Account getAccountByUsername(String username) {
         // Retrieve account details by username
-        return accountDAO.getAccountByUsername(username);
+        Account account = accountsByUsername.get(username);
+        if (account == null) {
+            account = accountDAO.getAccountByUsername(username);
+            if (account == null && ConnectionUtil.hasReplicas()) {
+                // The replica may not have the account yet; accounts never change otherwise, so a hit can be trusted
+                account = ConnectionUtil.readFromPrimary(() -> accountDAO.getAccountByUsername(username));
+            }
+            if (account != null) {
+                cache(account);
+            }
+        }
+        return account != null ? copyOf(account) : null;
+    }
+
+    public Account getAccountById(int accountId) {
+        Account account = accountsById.get(accountId);
+        if (account == null) {
+            Long missingUntil = missingAccountIds.get(accountId);
+            if (missingUntil != null && missingUntil > System.currentTimeMillis()) {
+                return null; // Looked up recently and not found
+            }
+            // Registration invalidates the id, so a miss read just before the account was created is not remembered
+            long loadGeneration = missingAccountIds.generation();
+            account = accountDAO.getAccountById(accountId); // Delegate the call to AccountDAO
+            if (account == null && ConnectionUtil.hasReplicas()) {
+                account = ConnectionUtil.readFromPrimary(() -> accountDAO.getAccountById(accountId));
+            }
+            if (account != null) {
+                cache(account);
+            } else {
+                missingAccountIds.putIfCurrent(accountId, System.currentTimeMillis() + NEGATIVE_TTL_MILLIS,
+                        loadGeneration);
+            }
+        }
+        return account != null ? copyOf(account) : null;
     }
-    public Account getAccountById(int accountId) { 
-        return accountDAO.getAccountById(accountId); // Delegate the call to AccountDAO
+
+    private void cache(Account account) {
+        accountsById.put(account.getAccount_id(), account);
+        accountsByUsername.put(account.getUsername(), account);
+    }
+
+    /**
+     * Account is mutable, so callers get copies and can never modify a cached instance.
+     */
+    private static Account copyOf(Account account) {
+        return new Account(account.getAccount_id(), account.getUsername(), account.getPassword());
+    }
+
+    public LruCache<Integer, Account> getAccountsById() {
+        return accountsById;
+    }
+
+    public LruCache<String, Account> getAccountsByUsername() {
+        return accountsByUsername;
+    }
+
+    public LruCache<Integer, VerifiedCredential> getVerifiedCredentials() {
+        return verifiedCredentials;
+    }
+
+    /**
+     * Proof that a password was recently verified for an account, and until when it may be trusted.
+     */
+    public static class VerifiedCredential {
+        private final byte[] digest;
+        private final long expiresAt;
+
+        private VerifiedCredential(byte[] digest, long expiresAt) {
+            this.digest = digest;
+            this.expiresAt = expiresAt;
+        }
     }
-}
\ No newline at end of file
+}
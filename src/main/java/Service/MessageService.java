@@ -2,73 +2,408 @@ package Service;
 
 import DAO.AccountDAO;
 import DAO.MessageDAO;
+import DAO.MessageVisitor;
 import Model.Message;
+import Model.MessageLookup;
+import Model.MessagePage;
 import Util.ConnectionUtil;
+import Util.InvertedIndex;
+import Util.LruCache;
+import Util.MessageShards;
+import Util.PageCursor;
+import Util.VersionTracker;
 
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class MessageService {
 
+    /**
+     * Upper bound on the page size a client may request, so a single page can never load the whole table.
+     */
+    public static final int MAX_PAGE_SIZE = 1000;
+    /**
+     * Upper bound on the number of messages in one batch create, so a single request cannot hold a transaction open
+     * for arbitrarily long.
+     */
+    public static final int MAX_BATCH_SIZE = 1000;
+
     private static MessageDAO messageDAO;
     private static AccountDAO accountDAO;
 
+    /**
+     * Read-through cache of messages by message_id. Entries are invalidated whenever a message is updated or deleted.
+     * Override the size with -Dmessage.cache.maxSize.
+     */
+    private final LruCache<Integer, Message> messageCache =
+            new LruCache<>(Integer.getInteger("message.cache.maxSize", 10_000));
+
+    /**
+     * Validates authors through the account cache, so posting as a known account costs no account queries.
+     */
+    private final AccountService accountService;
+
+    /**
+     * Full-text index of message_text by message_id, loaded from the table when the service is created and kept
+     * current by every create, update and delete that goes through this service.
+     */
+    private final InvertedIndex searchIndex = new InvertedIndex();
+
+    /**
+     * Receives every created message, to fan it out to the authors' followers' timelines.
+     */
+    private final TimelineService timelineService;
+
+    /**
+     * Change counters by message_id and by posted_by, from which the controller derives ETags. Bumped after every
+     * create, update and delete made through this service, once the cache has been invalidated.
+     */
+    private final VersionTracker messageVersions = new VersionTracker();
+    private final VersionTracker authorVersions = new VersionTracker();
+
     public MessageService(MessageDAO messageDAO, AccountDAO accountDAO) {
+        this(messageDAO, accountDAO, new AccountService());
+    }
+
+    public MessageService(MessageDAO messageDAO, AccountService accountService) {
+        this(messageDAO, new AccountDAO(), accountService);
+    }
+
+    public MessageService(MessageDAO messageDAO, AccountService accountService, TimelineService timelineService) {
+        this(messageDAO, new AccountDAO(), accountService, timelineService);
+    }
+
+    private MessageService(MessageDAO messageDAO, AccountDAO accountDAO, AccountService accountService) {
+        this(messageDAO, accountDAO, accountService, new TimelineService(accountService));
+    }
+
+    private MessageService(MessageDAO messageDAO, AccountDAO accountDAO, AccountService accountService,
+            TimelineService timelineService) {
         this.messageDAO = messageDAO;
-        this.accountDAO = accountDAO; 
+        this.accountDAO = accountDAO;
+        this.accountService = accountService;
+        this.timelineService = timelineService;
+        loadSearchIndex();
+    }
+
+    /**
+     * @throws IllegalStateException if the messages cannot be read. Starting with part of the index would leave the
+     * missing messages unsearchable until they are next edited, with nothing to show that they are missing.
+     */
+    private void loadSearchIndex() {
+        // From the primary, since from here on the index is kept current by this service's own writes
+        ConnectionUtil.readFromPrimary(() -> {
+            try {
+                MessageDAO.forEachMessage(message -> searchIndex.put(message.getMessage_id(),
+                        message.getMessage_text()));
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not load the search index", e);
+            }
+            return null;
+        });
     }
 
    
     
     public Message createMessage(Message message) {
-        if (message.getMessage_text() == null || message.getMessage_text().isBlank() || message.getMessage_text().length() > 255 || accountDAO.getAccountById(message.getPosted_by()) == null) {
+        return createMessage(message, false);
+    }
+
+    /**
+     * @param authorVerified true if the caller has already proven that posted_by exists, for example with a session
+     * token issued to that account, so the account lookup can be skipped.
+     */
+    public Message createMessage(Message message, boolean authorVerified) {
+        if (message.getMessage_text() == null || message.getMessage_text().isBlank() || message.getMessage_text().length() > 255) {
             return null;
         }
 
 
-        if (!AccountService.isAccountExist(message.getPosted_by())) {
+        if (!authorVerified && !accountService.isAccountExist(message.getPosted_by())) {
             return null;  // If the posted_by user does not exist
         }
-        return MessageDAO.createMessage(message);  // Delegate message creation to DAO
+        Message createdMessage = MessageDAO.createMessage(message);  // Delegate message creation to DAO
+        if (createdMessage != null) {
+            searchIndex.put(createdMessage.getMessage_id(), createdMessage.getMessage_text());
+            timelineService.onMessageCreated(createdMessage);
+            changed(createdMessage);
+        }
+        return createdMessage;
 }
 
+    /**
+     * Creates many messages at once, applying the same rules as createMessage to each. Every distinct author is
+     * checked once however many of their messages are in the batch, and all valid messages are inserted together in
+     * one transaction.
+     * @param messages between 1 and MAX_BATCH_SIZE messages.
+     * @return one entry per message, in the same order: the created message, or null if it was rejected.
+     * @throws IllegalArgumentException if the batch is empty or larger than MAX_BATCH_SIZE.
+     */
+    public List<Message> createMessages(List<Message> messages) {
+        if (messages.isEmpty() || messages.size() > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("batch size must be between 1 and " + MAX_BATCH_SIZE);
+        }
+
+        Map<Integer, Boolean> authorExists = new HashMap<>();
+        List<Message> validMessages = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            if (isValidNewMessage(message, authorExists)) {
+                validMessages.add(message);
+            }
+        }
+        List<Message> createdMessages = validMessages.isEmpty()
+                ? Collections.emptyList()
+                : MessageDAO.createMessages(validMessages);
+        for (Message createdMessage : createdMessages) {
+            if (createdMessage != null) {
+                searchIndex.put(createdMessage.getMessage_id(), createdMessage.getMessage_text());
+                timelineService.onMessageCreated(createdMessage);
+                changed(createdMessage);
+            }
+        }
+
+        // Line the results back up with the request, leaving null where a message was rejected
+        List<Message> results = new ArrayList<>(messages.size());
+        int created = 0;
+        for (Message message : messages) {
+            if (created < validMessages.size() && validMessages.get(created) == message) {
+                results.add(createdMessages.get(created++));
+            } else {
+                results.add(null);
+            }
+        }
+        return results;
+    }
+
+    private boolean isValidNewMessage(Message message, Map<Integer, Boolean> authorExists) {
+        if (message == null || message.getMessage_text() == null || message.getMessage_text().isBlank()
+                || message.getMessage_text().length() > 255) {
+            return false;
+        }
+        return authorExists.computeIfAbsent(message.getPosted_by(), accountService::isAccountExist);
+    }
+
 
     public List<Message> getAllMessages() {
         // Fetch all messages via DAO
         return messageDAO.getAllMessages();
     }
 
-    public static Message getMessageById(int messageId) {
-        // Fetch message by ID
-        return MessageDAO.getMessageById(messageId);
+    /**
+     * Hands every message to the visitor one row at a time, for listings too large to hold in memory.
+     * @param visitor receives each message in message_id order.
+     * @throws IOException if the messages cannot be read or the visitor fails to write one.
+     */
+    public void forEachMessage(MessageVisitor visitor) throws IOException {
+        MessageDAO.forEachMessage(visitor);
+    }
+
+    public Message getMessageById(int messageId) {
+        // Fetch message by ID, going to the database only on a cache miss. The cache keeps what it loads until the
+        // message next changes here, so it loads from the primary rather than a replica that may not have caught up
+        Message message = messageCache.getOrLoad(messageId,
+                id -> ConnectionUtil.readFromPrimary(() -> MessageDAO.getMessageById(id)));
+        // Hand out a copy so callers can never modify the cached instance
+        return message != null ? copyOf(message) : null;
+    }
+
+    /**
+     * Fetches several messages at once. Cached messages are served from the cache and all the others are read with a
+     * single query, however many there are.
+     * @param messageIds between 1 and MAX_PAGE_SIZE ids; duplicates are allowed.
+     * @return the messages found in the order requested, and the ids that were not found.
+     * @throws IllegalArgumentException if there are no ids or more than MAX_PAGE_SIZE.
+     */
+    public MessageLookup getMessagesByIds(List<Integer> messageIds) {
+        if (messageIds.isEmpty() || messageIds.size() > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("between 1 and " + MAX_PAGE_SIZE + " ids may be requested");
+        }
+
+        Map<Integer, Message> found = new HashMap<>();
+        Set<Integer> uncached = new LinkedHashSet<>();
+        for (Integer messageId : messageIds) {
+            Message message = messageCache.get(messageId);
+            if (message != null) {
+                found.put(messageId, message);
+            } else {
+                uncached.add(messageId);
+            }
+        }
+        if (!uncached.isEmpty()) {
+            long loadGeneration = messageCache.generation();
+            for (Message message : ConnectionUtil.readFromPrimary(() -> MessageDAO.getMessagesByIds(uncached))) {
+                found.put(message.getMessage_id(), message);
+                messageCache.putIfCurrent(message.getMessage_id(), message, loadGeneration);
+            }
+        }
+
+        List<Message> messages = new ArrayList<>(messageIds.size());
+        List<Integer> missingIds = new ArrayList<>();
+        for (Integer messageId : messageIds) {
+            Message message = found.get(messageId);
+            if (message != null) {
+                messages.add(copyOf(message));
+            } else {
+                missingIds.add(messageId);
+            }
+        }
+        return new MessageLookup(messages, missingIds);
+    }
+
+    /**
+     * Full-text search over message_text. Every word of the query must appear in a message; a word ending in '*'
+     * matches any word starting with it. Matching is case-insensitive and ignores punctuation.
+     * @param query for example "hello wor*".
+     * @param limit the maximum number of messages to return, between 1 and MAX_PAGE_SIZE.
+     * @return the matching messages, newest first.
+     * @throws IllegalArgumentException if the query has no searchable words or the limit is out of range.
+     */
+    public List<Message> searchMessages(String query, int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        InvertedIndex.Query parsedQuery = InvertedIndex.Query.parse(query);
+        int[] messageIds = searchIndex.search(parsedQuery, limit);
+        if (messageIds.length == 0) {
+            return new ArrayList<>();
+        }
+
+        List<Integer> ids = new ArrayList<>(messageIds.length);
+        for (int messageId : messageIds) {
+            ids.add(messageId);
+        }
+        List<Message> messages = getMessagesByIds(ids).getMessages();
+        // The index is updated after each write commits, so concurrent writes to one message can leave it briefly
+        // stale; re-checking the current text guarantees every result really matches
+        messages.removeIf(message -> !parsedQuery.matches(message.getMessage_text()));
+        return messages;
+    }
+
+    /**
+     * Reads the home timeline of an account: the newest messages posted by the accounts it follows.
+     * @param limit the maximum number of messages, between 1 and the timeline size (-Dtimeline.maxSize).
+     * @return the messages, newest first; fewer than limit if some have been deleted.
+     * @throws IllegalArgumentException if the limit is out of range.
+     */
+    public List<Message> getTimeline(int accountId, int limit) {
+        if (limit < 1 || limit > TimelineService.getTimelineMaxSize()) {
+            throw new IllegalArgumentException("limit must be between 1 and " + TimelineService.getTimelineMaxSize());
+        }
+        List<Integer> messageIds = timelineService.getTimelineIds(accountId, limit);
+        if (messageIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return getMessagesByIds(messageIds).getMessages();
+    }
+
+    /**
+     * @return the search index, for reading its size.
+     */
+    public InvertedIndex getSearchIndex() {
+        return searchIndex;
+    }
+
+    /**
+     * @return the message cache, for reading its hit, miss and eviction counters.
+     */
+    public LruCache<Integer, Message> getMessageCache() {
+        return messageCache;
+    }
+
+    private static Message copyOf(Message message) {
+        return new Message(message.getMessage_id(), message.getPosted_by(), message.getMessage_text(),
+                message.getTime_posted_epoch());
     }
 
     public static List<Message> getMessagesByAccountId(int accountId) {
         // Fetch all messages by account ID
         return MessageDAO.getMessagesByAccountId(accountId);
     }
+
+    /**
+     * Fetches one page of messages using keyset pagination.
+     * @param postedBy restrict to one account's messages, or null for all messages.
+     * @param after the cursor returned with the previous page, or null for the first page.
+     * @param orderBy message_id or time_posted_epoch; ignored when a cursor is given, since the cursor carries it.
+     * @param limit the page size, between 1 and MAX_PAGE_SIZE.
+     * @return the page, whose next_cursor is null once there are no more messages.
+     * @throws IllegalArgumentException if the cursor, ordering or limit is invalid.
+     */
+    public MessagePage getMessagesPage(Integer postedBy, String after, String orderBy, int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        PageCursor cursor = after != null
+                ? PageCursor.decode(after)
+                : PageCursor.first(PageCursor.Order.fromColumn(orderBy));
+
+        // Ask for one extra row to learn whether another page follows without a separate COUNT query
+        List<Message> messages = MessageDAO.getMessagesAfter(postedBy, cursor, limit + 1);
+        String nextCursor = null;
+        if (messages.size() > limit) {
+            messages = messages.subList(0, limit);
+            Message last = messages.get(limit - 1);
+            nextCursor = PageCursor.after(cursor.getOrder(), last.getTime_posted_epoch(), last.getMessage_id()).encode();
+        }
+        return new MessagePage(messages, nextCursor);
+    }
     
 
     public Message deleteMessageById(int messageId) {
+        return deleteMessageById(messageId, null);
+    }
+
+    /**
+     * @param postedBy the account the message must belong to, or null to delete it whoever posted it.
+     * @return the deleted message, or null if there was no such message by that account.
+     */
+    public Message deleteMessageById(int messageId, Integer postedBy) {
         // Delete the message and return the deleted message object
-        return MessageDAO.deleteMessageById(messageId);
+        Message deletedMessage = MessageDAO.deleteMessageById(messageId, postedBy);
+        messageCache.invalidate(messageId);
+        if (deletedMessage != null) {
+            searchIndex.remove(messageId);
+            changed(deletedMessage);
+        }
+        return deletedMessage;
     }
 
     public Message updateMessage(int messageId, String newMessageText) {
+        return updateMessage(messageId, null, newMessageText);
+    }
+
+    /**
+     * @param postedBy the account the message must belong to, or null to update it whoever posted it.
+     * @return the updated message, or null if the text is invalid or there was no such message by that account.
+     */
+    public Message updateMessage(int messageId, Integer postedBy, String newMessageText) {
         // Validate the new message text
         if (newMessageText == null || newMessageText.isBlank() || newMessageText.length() >= 255) {
             return null;
         }
 
         // Delegate message update to the DAO
-        return MessageDAO.updateMessage(messageId, newMessageText);
+        Message updatedMessage = MessageDAO.updateMessage(messageId, postedBy, newMessageText);
+        messageCache.invalidate(messageId);
+        if (updatedMessage != null) {
+            searchIndex.put(messageId, updatedMessage.getMessage_text());
+            changed(updatedMessage);
+        }
+        return updatedMessage;
     }
 
     public void updateMessage(Message message) {
         String sql = "UPDATE messages SET message_text = ? WHERE message_id = ?";
-        try (Connection conn = ConnectionUtil.getConnection(); 
+        try (Connection conn = MessageShards.getConnection(MessageShards.shardOfMessage(message.getMessage_id()));
              PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setString(1, message.getMessage_text());
             stmt.setInt(2, message.getMessage_id());
@@ -76,6 +411,35 @@ public class MessageService {
         } catch (SQLException e) {
             e.printStackTrace();
         }
+        ConnectionUtil.recordWrite();
+        messageCache.invalidate(message.getMessage_id());
+        changed(message);
+    }
+
+    private void changed(Message message) {
+        messageVersions.changed(message.getMessage_id());
+        authorVersions.changed(message.getPosted_by());
+    }
+
+    /**
+     * @return a tag that changes whenever any message is created, updated or deleted.
+     */
+    public String getMessagesTag() {
+        return messageVersions.tag();
+    }
+
+    /**
+     * @return a tag that changes whenever the message with this id is created, updated or deleted.
+     */
+    public String getMessageTag(int messageId) {
+        return messageVersions.tag(messageId);
+    }
+
+    /**
+     * @return a tag that changes whenever a message posted by this account is created, updated or deleted.
+     */
+    public String getAccountMessagesTag(int accountId) {
+        return authorVersions.tag(accountId);
     }
     
 }
\ No newline at end of file
@@ -0,0 +1,215 @@
+package Service;
+
+import DAO.FollowDAO;
+import DAO.MessageDAO;
+import Model.Message;
+import Util.LruCache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Follow relationships and home timelines. A home timeline is the newest messages posted by the accounts someone
+ * follows.
+ *
+ * Each account's timeline is kept in memory as a capped list of message ids, newest first, built from the database
+ * the first time it is read and afterwards kept current by fan-out on write: when a message is created, its id is
+ * pushed into the timeline of each of the author's followers that is in memory. Reading a timeline is then a copy of
+ * ids, with no join at request time.
+ *
+ * Pushing to every follower does not scale for an author with a huge audience, so authors with more than
+ * FANOUT_MAX_FOLLOWERS followers are marked as high fan-out and skipped on write. Their followers pull those
+ * authors' newest messages when they read their timeline instead (fan-out on read), one indexed query for all of
+ * them together.
+ */
+public class TimelineService {
+
+    /**
+     * Message ids kept per timeline. Override with -Dtimeline.maxSize.
+     */
+    private static final int TIMELINE_MAX_SIZE = Integer.getInteger("timeline.maxSize", 800);
+    /**
+     * Authors with more followers than this are not fanned out on write. Override with -Dtimeline.fanoutMaxFollowers.
+     */
+    private static final int FANOUT_MAX_FOLLOWERS = Integer.getInteger("timeline.fanoutMaxFollowers", 10_000);
+
+    private final AccountService accountService;
+
+    /**
+     * Timelines kept in memory, bounded by -Dtimeline.cache.maxSize accounts. An evicted timeline is rebuilt from
+     * the database the next time it is read.
+     */
+    private final LruCache<Integer, Timeline> timelines =
+            new LruCache<>(Integer.getInteger("timeline.cache.maxSize", 10_000));
+    /**
+     * Authors found to have more than FANOUT_MAX_FOLLOWERS followers. Membership is permanent for the life of the
+     * service, so no message of theirs can fall between fan-out on write and fan-out on read.
+     */
+    private final Set<Integer> highFanoutAuthors = ConcurrentHashMap.newKeySet();
+
+    public TimelineService(AccountService accountService) {
+        this.accountService = accountService;
+    }
+
+    /**
+     * @return false if either account does not exist, if they are the same account, or if it could not be stored.
+     */
+    public boolean follow(int followerId, int followeeId) {
+        if (followerId == followeeId || !accountService.isAccountExist(followerId)
+                || !accountService.isAccountExist(followeeId)) {
+            return false;
+        }
+        if (!FollowDAO.follow(followerId, followeeId)) {
+            return false;
+        }
+        // The followee's existing messages belong in the timeline now; rebuild it on the next read
+        timelines.invalidate(followerId);
+        return true;
+    }
+
+    /**
+     * @return true if followerId was following followeeId.
+     */
+    public boolean unfollow(int followerId, int followeeId) {
+        boolean unfollowed = FollowDAO.unfollow(followerId, followeeId);
+        timelines.invalidate(followerId);
+        return unfollowed;
+    }
+
+    /**
+     * Fans a newly created message out to the timelines of its author's followers. Must be called after the message
+     * has been committed.
+     */
+    public void onMessageCreated(Message message) {
+        int authorId = message.getPosted_by();
+        if (highFanoutAuthors.contains(authorId)) {
+            return;
+        }
+        List<Integer> followerIds = FollowDAO.getFollowerIds(authorId, FANOUT_MAX_FOLLOWERS + 1);
+        if (followerIds.size() > FANOUT_MAX_FOLLOWERS) {
+            highFanoutAuthors.add(authorId);
+            return;
+        }
+        for (Integer followerId : followerIds) {
+            Timeline timeline = timelines.get(followerId);
+            if (timeline != null) {
+                timeline.add(message.getMessage_id());
+            }
+        }
+    }
+
+    /**
+     * @param limit the maximum number of ids to return, at most TIMELINE_MAX_SIZE.
+     * @return the ids of the newest messages by the accounts accountId follows, newest first. Some may belong to
+     * messages that have since been deleted.
+     */
+    public List<Integer> getTimelineIds(int accountId, int limit) {
+        Timeline timeline = timelines.get(accountId);
+        if (timeline == null) {
+            // Publish the empty timeline before loading it, so messages created during the load are pushed to it
+            Timeline created = new Timeline();
+            timeline = timelines.putIfAbsent(accountId, created);
+            if (timeline == null) {
+                timeline = created;
+            }
+        }
+        int[] pushed = timeline.newest(accountId, limit);
+
+        List<Integer> pullFrom = new ArrayList<>();
+        for (Integer followeeId : timeline.getFolloweeIds()) {
+            if (highFanoutAuthors.contains(followeeId)) {
+                pullFrom.add(followeeId);
+            }
+        }
+        List<Integer> timelineIds = new ArrayList<>(pushed.length);
+        for (int messageId : pushed) {
+            timelineIds.add(messageId);
+        }
+        if (pullFrom.isEmpty()) {
+            return timelineIds;
+        }
+
+        // Merge in the high fan-out authors' newest messages, which were never pushed
+        timelineIds.addAll(MessageDAO.getLatestMessageIds(pullFrom, limit));
+        return timelineIds.stream()
+                .distinct()
+                .sorted((a, b) -> Integer.compare(b, a))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    public static int getTimelineMaxSize() {
+        return TIMELINE_MAX_SIZE;
+    }
+
+    /**
+     * @return the in-memory timelines, for reading their hit, miss and eviction counters.
+     */
+    public LruCache<Integer, Timeline> getTimelines() {
+        return timelines;
+    }
+
+    /**
+     * One account's timeline: up to TIMELINE_MAX_SIZE message ids in ascending order, so the newest is last and
+     * pushing a new message is usually an append. Loaded lazily, under the same lock that pushes take, so a push that
+     * arrives while the timeline is loading waits for the load and is then merged in.
+     */
+    public static class Timeline {
+        private int[] messageIds = new int[16];
+        private int size;
+        private List<Integer> followeeIds;
+
+        private synchronized void add(int messageId) {
+            if (followeeIds == null) {
+                return; // not loaded yet; the load will read this message from the database
+            }
+            insert(messageId);
+        }
+
+        private void insert(int messageId) {
+            int position = Arrays.binarySearch(messageIds, 0, size, messageId);
+            if (position >= 0) {
+                return;
+            }
+            position = -position - 1;
+            if (size == TIMELINE_MAX_SIZE) {
+                if (position == 0) {
+                    return; // older than everything kept
+                }
+                // Drop the oldest to make room
+                System.arraycopy(messageIds, 1, messageIds, 0, position - 1);
+                messageIds[position - 1] = messageId;
+                return;
+            }
+            if (size == messageIds.length) {
+                messageIds = Arrays.copyOf(messageIds, Math.min(TIMELINE_MAX_SIZE, size * 2));
+            }
+            System.arraycopy(messageIds, position, messageIds, position + 1, size - position);
+            messageIds[position] = messageId;
+            size++;
+        }
+
+        private synchronized int[] newest(int accountId, int limit) {
+            if (followeeIds == null) {
+                followeeIds = FollowDAO.getFolloweeIds(accountId);
+                for (Integer messageId : MessageDAO.getLatestMessageIds(followeeIds, TIMELINE_MAX_SIZE)) {
+                    insert(messageId);
+                }
+            }
+            int count = Math.min(limit, size);
+            int[] newest = new int[count];
+            for (int i = 0; i < count; i++) {
+                newest[i] = messageIds[size - 1 - i];
+            }
+            return newest;
+        }
+
+        private synchronized List<Integer> getFolloweeIds() {
+            return followeeIds;
+        }
+    }
+}
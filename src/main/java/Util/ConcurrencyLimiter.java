@@ -0,0 +1,72 @@
+package Util;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caps how many callers may run a section at once. Used to stop an effectively unbounded number of request threads
+ * (for example virtual threads) from all reaching the database together: callers beyond the limit wait up to
+ * acquireTimeoutMillis for a permit and are then turned away, instead of piling up inside the connection pool.
+ */
+public class ConcurrencyLimiter {
+
+    private final int maxConcurrent;
+    private final long acquireTimeoutMillis;
+    private final Semaphore permits;
+
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+
+    public ConcurrencyLimiter(int maxConcurrent, long acquireTimeoutMillis) {
+        if (maxConcurrent < 1) {
+            throw new IllegalArgumentException("maxConcurrent must be at least 1");
+        }
+        this.maxConcurrent = maxConcurrent;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.permits = new Semaphore(maxConcurrent, true);
+    }
+
+    /**
+     * Waits up to acquireTimeoutMillis for a permit. Every successful call must be paired with release().
+     * @return true if a permit was acquired, false if the caller should be rejected.
+     */
+    public boolean tryAcquire() {
+        if (permits.tryAcquire()) {
+            return true;
+        }
+        waiting.incrementAndGet();
+        try {
+            if (permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            waiting.decrementAndGet();
+        }
+        rejected.increment();
+        return false;
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    public int getInFlightCount() {
+        return maxConcurrent - permits.availablePermits();
+    }
+
+    public int getWaitingCount() {
+        return waiting.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+}
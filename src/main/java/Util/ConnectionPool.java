@@ -0,0 +1,335 @@
+package Util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sql.DataSource;
+
+/**
+ * A small, bounded JDBC connection pool. Physical connections are opened lazily from the wrapped DataSource,
+ * up to maxSize. Callers receive a proxy whose close() hands the connection back to the pool instead of closing it,
+ * so the usual try-with-resources pattern in the DAOs keeps working unchanged.
+ *
+ * Borrowers wait at most borrowTimeoutMillis for a free connection, idle connections are validated before they are
+ * handed out and evicted once they have been idle for longer than idleTimeoutMillis.
+ *
+ * Each connection also keeps up to statementCacheSize prepared statements open across borrows (see StatementCache),
+ * so the DAOs' repeated queries are parsed and planned once per connection rather than once per call.
+ */
+public class ConnectionPool {
+
+    /**
+     * Connections used more recently than this are assumed to be alive and are not re-validated on borrow.
+     */
+    private static final long VALIDATION_BYPASS_MILLIS = 500;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    private final DataSource dataSource;
+    private final int maxSize;
+    private final long borrowTimeoutMillis;
+    private final long idleTimeoutMillis;
+    private final int statementCacheSize;
+
+    /**
+     * One permit per connection that may be handed out. Fair, so that waiters are served in arrival order.
+     */
+    private final Semaphore permits;
+    /**
+     * Idle connections, most recently returned first, so the tail holds the ones that are due for eviction.
+     */
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final ScheduledExecutorService evictor;
+    private volatile boolean closed;
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger waiters = new AtomicInteger();
+    private final AtomicInteger open = new AtomicInteger();
+    private final LongAdder borrowCount = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder timeoutCount = new LongAdder();
+    private final LongAdder createdCount = new LongAdder();
+    private final LongAdder evictedCount = new LongAdder();
+    private final LongAdder statementHits = new LongAdder();
+    private final LongAdder statementMisses = new LongAdder();
+    private final LongAdder statementEvictions = new LongAdder();
+
+    public ConnectionPool(DataSource dataSource, int maxSize, long borrowTimeoutMillis, long idleTimeoutMillis,
+            int statementCacheSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be at least 1");
+        }
+        this.dataSource = dataSource;
+        this.maxSize = maxSize;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+
+        this.evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "connection-pool-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1000, idleTimeoutMillis / 2);
+        evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrows a connection, waiting up to borrowTimeoutMillis for one to become free.
+     * @return a pooled connection; closing it returns it to the pool.
+     * @throws SQLTimeoutException if no connection became free in time.
+     */
+    public Connection borrow() throws SQLException {
+        long start = System.nanoTime();
+        waiters.incrementAndGet();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        } finally {
+            waiters.decrementAndGet();
+            waitNanos.add(System.nanoTime() - start);
+        }
+        if (!acquired) {
+            timeoutCount.increment();
+            throw new SQLTimeoutException("Timed out after " + borrowTimeoutMillis + "ms waiting for a connection ("
+                    + active.get() + " active, " + maxSize + " max)");
+        }
+
+        try {
+            if (closed) {
+                throw new SQLException("The connection pool is closed");
+            }
+            PooledConnection pooled = takeValidIdle();
+            if (pooled == null) {
+                pooled = new PooledConnection(dataSource.getConnection());
+                open.incrementAndGet();
+                createdCount.increment();
+            }
+            active.incrementAndGet();
+            borrowCount.increment();
+            return pooled.lease();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private PooledConnection takeValidIdle() {
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            if (System.currentTimeMillis() - pooled.lastUsed < VALIDATION_BYPASS_MILLIS || isValid(pooled)) {
+                return pooled;
+            }
+            discard(pooled);
+        }
+        return null;
+    }
+
+    private boolean isValid(PooledConnection pooled) {
+        try {
+            return pooled.physical.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void release(PooledConnection pooled) {
+        active.decrementAndGet();
+        try {
+            if (pooled.physical.isClosed()) {
+                discard(pooled);
+                return;
+            }
+            pooled.statements.releaseAll();
+            if (!pooled.physical.getAutoCommit()) {
+                pooled.physical.rollback();
+                pooled.physical.setAutoCommit(true);
+            }
+            pooled.lastUsed = System.currentTimeMillis();
+            idle.offerFirst(pooled);
+            // Unless close() has already drained the idle connections, in which case this one is closed here
+            if (closed && idle.remove(pooled)) {
+                discard(pooled);
+            }
+        } catch (SQLException e) {
+            discard(pooled);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void discard(PooledConnection pooled) {
+        open.decrementAndGet();
+        try {
+            pooled.physical.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Stops the evictor and closes every idle connection. Connections still borrowed are closed when they are
+     * returned, and later borrows fail.
+     */
+    public void close() {
+        closed = true;
+        evictor.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            discard(pooled);
+        }
+    }
+
+    private void evictIdle() {
+        long cutoff = System.currentTimeMillis() - idleTimeoutMillis;
+        Iterator<PooledConnection> it = idle.descendingIterator();
+        while (it.hasNext()) {
+            PooledConnection pooled = it.next();
+            if (pooled.lastUsed < cutoff && idle.removeLastOccurrence(pooled)) {
+                evictedCount.increment();
+                discard(pooled);
+            }
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    public int getOpenCount() {
+        return open.get();
+    }
+
+    public int getWaiterCount() {
+        return waiters.get();
+    }
+
+    public long getBorrowCount() {
+        return borrowCount.sum();
+    }
+
+    public long getTotalWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(waitNanos.sum());
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount.sum();
+    }
+
+    public long getCreatedCount() {
+        return createdCount.sum();
+    }
+
+    public long getEvictedCount() {
+        return evictedCount.sum();
+    }
+
+    public long getStatementHitCount() {
+        return statementHits.sum();
+    }
+
+    public long getStatementMissCount() {
+        return statementMisses.sum();
+    }
+
+    public long getStatementEvictionCount() {
+        return statementEvictions.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionPool{" +
+                "active=" + getActiveCount() +
+                ", idle=" + getIdleCount() +
+                ", open=" + getOpenCount() +
+                ", max=" + maxSize +
+                ", waiters=" + getWaiterCount() +
+                ", borrows=" + getBorrowCount() +
+                ", totalWaitMillis=" + getTotalWaitMillis() +
+                ", timeouts=" + getTimeoutCount() +
+                ", statementHits=" + getStatementHitCount() +
+                ", statementMisses=" + getStatementMissCount() +
+                '}';
+    }
+
+    /**
+     * A physical connection owned by the pool. Every borrow hands out a fresh proxy, so a stale reference that is
+     * closed twice cannot return the connection to the pool while somebody else is using it.
+     */
+    private class PooledConnection {
+        private final Connection physical;
+        private final StatementCache statements =
+                new StatementCache(statementCacheSize, statementHits, statementMisses, statementEvictions);
+        private volatile long lastUsed = System.currentTimeMillis();
+
+        private PooledConnection(Connection physical) {
+            this.physical = physical;
+        }
+
+        private Connection lease() {
+            AtomicBoolean returned = new AtomicBoolean();
+            Connection[] self = new Connection[1];
+            InvocationHandler handler = (proxy, method, args) -> invoke(returned, self[0], method, args);
+            self[0] = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[] { Connection.class }, handler);
+            return self[0];
+        }
+
+        private Object invoke(AtomicBoolean returned, Connection self, Method method, Object[] args)
+                throws Throwable {
+            switch (method.getName()) {
+                // Object's methods describe the proxy itself, so they keep working after it has been returned
+                case "equals":
+                    return self == args[0];
+                case "hashCode":
+                    return System.identityHashCode(self);
+                case "toString":
+                    return "PooledConnection[" + physical + (returned.get() ? ", returned]" : "]");
+                case "close":
+                    if (returned.compareAndSet(false, true)) {
+                        release(this);
+                    }
+                    return null;
+                case "isClosed":
+                    return returned.get() || physical.isClosed();
+                default:
+                    if (returned.get()) {
+                        throw new SQLException("Connection has already been returned to the pool");
+                    }
+                    if (method.getName().equals("prepareStatement")) {
+                        return statements.prepare(physical, self, method, args);
+                    }
+                    try {
+                        return method.invoke(physical, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+            }
+        }
+    }
+}
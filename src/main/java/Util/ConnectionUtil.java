@@ -1,9 +1,14 @@
 package Util;
 
-import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
 
 import org.h2.jdbcx.JdbcDataSource;
 import org.h2.tools.RunScript;
@@ -13,15 +18,22 @@ import org.h2.tools.RunScript;
  * our database. This class utilizes the singleton design pattern. We will be
  * utilizing an in-memory called h2database for the sql demos.
  *
- * DO NOT CHANGE ANYTHING IN THIS CLASS
+ * Connections are served from a bounded ConnectionPool, so every caller must close the connection it borrows.
+ *
+ * Reads that may be slightly stale can borrow from getReadConnection() instead, which spreads them over read
+ * replicas listed in -Ddb.replica.urls (for example H2 servers kept in step with the primary by H2's CreateCluster
+ * tool, or copies restored from shipped SCRIPT exports). Replicas are assumed to lag the primary by at most
+ * -Ddb.replica.maxLagMillis, so for that long after any write through this process every read goes to the primary;
+ * callers that must see their own writes regardless can wrap their work in readFromPrimary.
  */
 public class ConnectionUtil {
 
 	/**
 	 * url will represent our connection string. Since this is an in-memory db, we
-	 * will represent a file location to store the data
+	 * will represent a file location to store the data. Override with -Ddb.url, for
+	 * example to point benchmarks at their own database file.
 	 */
-	private static String url = "jdbc:h2:./h2/db;";
+	private static String url = System.getProperty("db.url", "jdbc:h2:./h2/db;");
 	/**
 	 * Default username for connecting to h2
 	 */
@@ -32,25 +44,101 @@ public class ConnectionUtil {
 	private static String password = "sa";
 
 	/**
-	 * DataSource for pooling. Pooling enables the creation of multiple connections when connections are closed.
+	 * Maximum number of physical connections the pool will open. Override with -Ddb.pool.maxSize.
+	 */
+	private static int poolMaxSize = Integer.getInteger("db.pool.maxSize", 10);
+	/**
+	 * How long a caller waits for a free connection before giving up. Override with -Ddb.pool.borrowTimeoutMillis.
+	 */
+	private static long borrowTimeoutMillis = Long.getLong("db.pool.borrowTimeoutMillis", 30_000L);
+	/**
+	 * How long a connection may sit idle before it is closed. Override with -Ddb.pool.idleTimeoutMillis.
+	 */
+	private static long idleTimeoutMillis = Long.getLong("db.pool.idleTimeoutMillis", 600_000L);
+	/**
+	 * Prepared statements each pooled connection keeps open for reuse; 0 disables the cache.
+	 * Override with -Ddb.pool.statementCacheSize.
+	 */
+	private static int statementCacheSize = Integer.getInteger("db.pool.statementCacheSize", 64);
+
+	/**
+	 * DataSource that opens the physical H2 connections handed out by the pool.
 	 */
-	private static JdbcDataSource pool = new JdbcDataSource();
+	private static JdbcDataSource dataSource = new JdbcDataSource();
+
+	/**
+	 * Bounded pool in front of the DataSource. Closing a connection obtained from getConnection() returns it here.
+	 */
+	private static ConnectionPool pool;
+
+	/**
+	 * Comma-separated JDBC URLs of read replicas, each behind its own pool of db.pool.maxSize connections. Empty by
+	 * default, which sends every read to the primary.
+	 */
+	private static String replicaUrls = System.getProperty("db.replica.urls", "");
+	/**
+	 * Longest time a replica may lag the primary. Override with -Ddb.replica.maxLagMillis.
+	 */
+	private static volatile long replicaMaxLagMillis = Long.getLong("db.replica.maxLagMillis", 1_000L);
+
+	/**
+	 * Replaced as a whole by setReplicas, never modified, so readers need no lock.
+	 */
+	private static volatile List<ConnectionPool> replicaPools;
+	private static final AtomicInteger nextReplica = new AtomicInteger();
+	private static final LongAdder replicaReads = new LongAdder();
+	private static final LongAdder primaryReads = new LongAdder();
+	/**
+	 * When this process last wrote to the primary, in currentTimeMillis.
+	 */
+	private static volatile long lastWriteMillis;
+	/**
+	 * Set while the current thread is inside readFromPrimary.
+	 */
+	private static final ThreadLocal<Boolean> primaryReadsOnly = ThreadLocal.withInitial(() -> Boolean.FALSE);
 
 	/**
 	 * static initialization block to establish credentials for DataSoure Pool
 	 */
 	static {
-		pool.setURL(url);
-		pool.setUser(username);
-		pool.setPassword(password);
+		dataSource.setURL(url);
+		dataSource.setUser(username);
+		dataSource.setPassword(password);
+		pool = new ConnectionPool(dataSource, poolMaxSize, borrowTimeoutMillis, idleTimeoutMillis,
+				statementCacheSize);
+		replicaPools = openReplicaPools(replicaUrls);
+	}
+
+	private static List<ConnectionPool> openReplicaPools(String jdbcUrls) {
+		List<ConnectionPool> pools = new ArrayList<>();
+		for (String replicaUrl : jdbcUrls.split(",")) {
+			if (!replicaUrl.isBlank()) {
+				pools.add(openPool(replicaUrl.trim()));
+			}
+		}
+		return List.copyOf(pools);
 	}
 
 	/**
+	 * @return a pool configured like the primary's, for another database such as a replica or a message shard.
+	 */
+	static ConnectionPool openPool(String jdbcUrl) {
+		JdbcDataSource otherDataSource = new JdbcDataSource();
+		otherDataSource.setURL(jdbcUrl);
+		otherDataSource.setUser(username);
+		otherDataSource.setPassword(password);
+		return new ConnectionPool(otherDataSource, poolMaxSize, borrowTimeoutMillis, idleTimeoutMillis,
+				statementCacheSize);
+	}
+
+	/**
+	 * Connections must be closed (ideally with try-with-resources) so that they are returned to the pool.
+	 *
 	 * @return an active connection to the database
 	 */
 	public static Connection getConnection() {
 		try {
-			return pool.getConnection();
+			return pool.borrow();
 		} catch (SQLException e) {
 			e.printStackTrace();
 		}
@@ -58,17 +146,123 @@ public class ConnectionUtil {
 		return null;
 	}
 
+	/**
+	 * For SELECT-only work that tolerates replication lag. Goes to a replica, in turn, unless there are none, the
+	 * current thread is inside readFromPrimary, or this process wrote within the replica lag bound. A replica that
+	 * cannot hand out a connection is skipped, falling back to the primary.
+	 *
+	 * @return an active connection to a replica or the primary, which must be closed like any other
+	 */
+	public static Connection getReadConnection() {
+		List<ConnectionPool> replicas = replicaPools;
+		if (!replicas.isEmpty() && !primaryReadsOnly.get()
+				&& System.currentTimeMillis() - lastWriteMillis >= replicaMaxLagMillis) {
+			int first = Math.floorMod(nextReplica.getAndIncrement(), replicas.size());
+			for (int i = 0; i < replicas.size(); i++) {
+				try {
+					Connection connection = replicas.get((first + i) % replicas.size()).borrow();
+					replicaReads.increment();
+					return connection;
+				} catch (SQLException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		primaryReads.increment();
+		return getConnection();
+	}
+
+	/**
+	 * Runs work with every read on the current thread going to the primary, so it sees all writes committed before
+	 * it started, including its own.
+	 */
+	public static <T> T readFromPrimary(Supplier<T> work) {
+		boolean outer = primaryReadsOnly.get();
+		primaryReadsOnly.set(Boolean.TRUE);
+		try {
+			return work.get();
+		} finally {
+			primaryReadsOnly.set(outer);
+		}
+	}
+
+	/**
+	 * @return true if the current thread is inside readFromPrimary, so that work handed to another thread can carry
+	 * the same guarantee with it.
+	 */
+	public static boolean isReadingFromPrimary() {
+		return primaryReadsOnly.get();
+	}
+
+	/**
+	 * Called by the DAOs after writing to the primary, to keep reads off the replicas until they have caught up.
+	 */
+	public static void recordWrite() {
+		lastWriteMillis = System.currentTimeMillis();
+	}
+
+	/**
+	 * Replaces the replicas and their lag bound, as -Ddb.replica.urls and -Ddb.replica.maxLagMillis would at startup,
+	 * so that tests can route reads without a JVM of their own. The replaced pools are closed: their idle connections
+	 * at once, and connections still borrowed by reads in progress when those reads return them.
+	 * @param jdbcUrls comma-separated replica URLs; empty sends every read to the primary.
+	 */
+	public static void setReplicas(String jdbcUrls, long maxLagMillis) {
+		List<ConnectionPool> replaced = replicaPools;
+		replicaMaxLagMillis = maxLagMillis;
+		replicaPools = openReplicaPools(jdbcUrls);
+		for (ConnectionPool replacedPool : replaced) {
+			replacedPool.close();
+		}
+	}
+
+	/**
+	 * @return true if reads can be sent to a replica at all.
+	 */
+	public static boolean hasReplicas() {
+		return !replicaPools.isEmpty();
+	}
+
+	/**
+	 * @return the replica pools, for reading their live statistics; empty if there are no replicas.
+	 */
+	public static List<ConnectionPool> getReplicaPools() {
+		return replicaPools;
+	}
+
+	/**
+	 * @return reads from getReadConnection() served by a replica.
+	 */
+	public static long getReplicaReadCount() {
+		return replicaReads.sum();
+	}
+
+	/**
+	 * @return reads from getReadConnection() sent to the primary.
+	 */
+	public static long getPrimaryReadCount() {
+		return primaryReads.sum();
+	}
+
+	/**
+	 * @return the pool behind getConnection(), for reading its live statistics.
+	 */
+	public static ConnectionPool getPool() {
+		return pool;
+	}
+
 	/**
 	 * For the purpose of testing, we will need to drop and recreate our database
 	 * tables to keep it consistent across all tests. The method will read the sql
 	 * file in resources. This will be performed before every test.
 	 */
 	public static void resetTestDatabase() {
-		try {
-			FileReader sqlReader = new FileReader("src/main/resources/SocialMedia.sql");
-			RunScript.execute(getConnection(), sqlReader);
-		} catch (SQLException | FileNotFoundException e) {
+		try (Connection conn = getConnection();
+				FileReader sqlReader = new FileReader("src/main/resources/SocialMedia.sql")) {
+			RunScript.execute(conn, sqlReader);
+		} catch (SQLException | IOException e) {
 			e.printStackTrace();
 		}
+		MessageShards.clearOtherShards();
 	}
 }
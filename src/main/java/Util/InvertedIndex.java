@@ -0,0 +1,314 @@
+package Util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An in-memory full-text index from terms to the ids of the documents that contain them.
+ *
+ * Text is split into lower-case runs of letters and digits. Each term's posting list is a sorted, primitive int
+ * array of document ids, so a lookup allocates nothing and an AND query intersects the lists smallest first, skipping
+ * through the larger ones by binary search. Terms are kept in a sorted map, so a prefix query (a term ending in '*')
+ * is a range scan over the dictionary. A forward map from document to its posting lists lets a document be removed
+ * or re-indexed without knowing its old text.
+ *
+ * Ids are expected to arrive mostly in increasing order, as generated keys do, which makes adding an append.
+ * Reads share a lock; writes are exclusive but only touch the posting lists of one document.
+ */
+public class InvertedIndex {
+
+    private static final int MAX_TERM_LENGTH = 64;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final NavigableMap<String, PostingList> terms = new TreeMap<>();
+    private final Map<Integer, PostingList[]> documents = new HashMap<>();
+
+    /**
+     * Indexes a document, replacing whatever was indexed under the same id before.
+     */
+    public void put(int documentId, String text) {
+        Set<String> documentTerms = tokenize(text);
+        lock.writeLock().lock();
+        try {
+            removeLocked(documentId);
+            PostingList[] postings = new PostingList[documentTerms.size()];
+            int i = 0;
+            for (String term : documentTerms) {
+                PostingList posting = terms.computeIfAbsent(term, PostingList::new);
+                posting.add(documentId);
+                postings[i++] = posting;
+            }
+            documents.put(documentId, postings);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(int documentId) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(documentId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void removeLocked(int documentId) {
+        PostingList[] postings = documents.remove(documentId);
+        if (postings == null) {
+            return;
+        }
+        for (PostingList posting : postings) {
+            posting.remove(documentId);
+            if (posting.size == 0) {
+                terms.remove(posting.term);
+            }
+        }
+    }
+
+    /**
+     * Finds the documents that contain every term of the query.
+     * @param query the parsed query.
+     * @param limit the maximum number of ids to return.
+     * @return up to limit matching ids, highest (newest) first.
+     */
+    public int[] search(Query query, int limit) {
+        int[] matches;
+        lock.readLock().lock();
+        try {
+            List<int[]> lists = new ArrayList<>();
+            List<Integer> sizes = new ArrayList<>();
+            for (String term : query.terms) {
+                PostingList posting = terms.get(term);
+                if (posting == null) {
+                    return new int[0];
+                }
+                lists.add(posting.ids);
+                sizes.add(posting.size);
+            }
+            for (String prefix : query.prefixes) {
+                int[] union = unionOfPrefix(prefix);
+                if (union.length == 0) {
+                    return new int[0];
+                }
+                lists.add(union);
+                sizes.add(union.length);
+            }
+            matches = intersect(lists, sizes);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        int count = Math.min(limit, matches.length);
+        int[] newestFirst = new int[count];
+        for (int i = 0; i < count; i++) {
+            newestFirst[i] = matches[matches.length - 1 - i];
+        }
+        return newestFirst;
+    }
+
+    private int[] unionOfPrefix(String prefix) {
+        Map<String, PostingList> range = terms.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+        if (range.size() == 1) {
+            PostingList only = range.values().iterator().next();
+            return Arrays.copyOf(only.ids, only.size);
+        }
+        int total = 0;
+        for (PostingList posting : range.values()) {
+            total += posting.size;
+        }
+        int[] union = new int[total];
+        int n = 0;
+        for (PostingList posting : range.values()) {
+            System.arraycopy(posting.ids, 0, union, n, posting.size);
+            n += posting.size;
+        }
+        Arrays.sort(union);
+        int distinct = 0;
+        for (int i = 0; i < n; i++) {
+            if (distinct == 0 || union[distinct - 1] != union[i]) {
+                union[distinct++] = union[i];
+            }
+        }
+        return Arrays.copyOf(union, distinct);
+    }
+
+    /**
+     * Intersects sorted id lists, starting from the shortest so the result only shrinks.
+     */
+    private static int[] intersect(List<int[]> lists, List<Integer> sizes) {
+        Integer[] order = new Integer[lists.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(sizes.get(a), sizes.get(b)));
+
+        int[] result = Arrays.copyOf(lists.get(order[0]), sizes.get(order[0]));
+        int resultSize = result.length;
+        for (int k = 1; k < order.length && resultSize > 0; k++) {
+            int[] other = lists.get(order[k]);
+            int otherSize = sizes.get(order[k]);
+            int kept = 0;
+            int from = 0;
+            for (int i = 0; i < resultSize; i++) {
+                int found = Arrays.binarySearch(other, from, otherSize, result[i]);
+                if (found >= 0) {
+                    result[kept++] = result[i];
+                    from = found + 1;
+                } else {
+                    from = -found - 1;
+                }
+            }
+            resultSize = kept;
+        }
+        return Arrays.copyOf(result, resultSize);
+    }
+
+    /**
+     * @return the number of indexed documents.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of distinct terms in the index.
+     */
+    public int getTermCount() {
+        lock.readLock().lock();
+        try {
+            return terms.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Splits text into distinct lower-case terms: maximal runs of letters and digits, cut to MAX_TERM_LENGTH.
+     */
+    static Set<String> tokenize(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        if (text == null) {
+            return tokens;
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= lower.length(); i++) {
+            boolean wordChar = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                tokens.add(lower.substring(start, Math.min(i, start + MAX_TERM_LENGTH)));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * A parsed AND query: every whole term must appear in a document, and for every prefix some term of the document
+     * must start with it. A query word ending in '*' is a prefix.
+     */
+    public static class Query {
+        private final Set<String> terms = new LinkedHashSet<>();
+        private final Set<String> prefixes = new LinkedHashSet<>();
+
+        /**
+         * @throws IllegalArgumentException if the query contains no searchable term.
+         */
+        public static Query parse(String query) {
+            Query parsed = new Query();
+            if (query != null) {
+                for (String word : query.trim().split("\\s+")) {
+                    boolean prefix = word.endsWith("*");
+                    for (String token : tokenize(word)) {
+                        (prefix ? parsed.prefixes : parsed.terms).add(token);
+                    }
+                }
+            }
+            if (parsed.terms.isEmpty() && parsed.prefixes.isEmpty()) {
+                throw new IllegalArgumentException("query has no searchable terms");
+            }
+            return parsed;
+        }
+
+        /**
+         * Checks the query against a document's current text, for callers that want to drop any match the index
+         * reported from a stale version of the document.
+         */
+        public boolean matches(String text) {
+            Set<String> documentTerms = tokenize(text);
+            if (!documentTerms.containsAll(terms)) {
+                return false;
+            }
+            for (String prefix : prefixes) {
+                boolean found = false;
+                for (String term : documentTerms) {
+                    if (term.startsWith(prefix)) {
+                        found = true;
+                        break;
+                    }
+                }
+                if (!found) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * The sorted ids of the documents containing one term, in a growable primitive array.
+     */
+    private static class PostingList {
+        private final String term;
+        private int[] ids = new int[4];
+        private int size;
+
+        private PostingList(String term) {
+            this.term = term;
+        }
+
+        private void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size + (size >> 1) + 1);
+            }
+            if (size == 0 || ids[size - 1] < id) {
+                ids[size++] = id; // the common case: a newly generated id
+                return;
+            }
+            int position = Arrays.binarySearch(ids, 0, size, id);
+            if (position >= 0) {
+                return;
+            }
+            position = -position - 1;
+            System.arraycopy(ids, position, ids, position + 1, size - position);
+            ids[position] = id;
+            size++;
+        }
+
+        private void remove(int id) {
+            int position = Arrays.binarySearch(ids, 0, size, id);
+            if (position < 0) {
+                return;
+            }
+            System.arraycopy(ids, position + 1, ids, position, size - position - 1);
+            size--;
+        }
+    }
+}
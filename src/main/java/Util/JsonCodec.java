@@ -0,0 +1,258 @@
+package Util;
+
+import Model.Account;
+import Model.Message;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+/**
+ * The one JSON codec shared by the whole application. Message and Account, which every endpoint reads or writes, are
+ * handled by hand-written serializers and deserializers that stream fields directly, instead of Jackson's
+ * reflection-based bean introspection. Everything else still goes through the regular ObjectMapper.
+ *
+ * The deserializers accept exactly what the reflective mapper accepts. Field values are converted by the same
+ * StdDeserializer helpers Jackson's own int, long and String deserializers use, so numbers in strings are still read
+ * while anything else of the wrong type is rejected. Unknown fields are rejected too, unless the mapper is configured
+ * otherwise, as with the default mapper the endpoints used before. Failures carry the field's path, as from a bean.
+ *
+ * ObjectMapper, ObjectReader and ObjectWriter are thread-safe once configured, so they are built once here and
+ * reused by every request rather than created per call.
+ */
+public class JsonCodec {
+
+    private static final ObjectMapper MAPPER = createMapper();
+
+    public static final ObjectReader MESSAGE_READER = MAPPER.readerFor(Message.class);
+    public static final ObjectReader ACCOUNT_READER = MAPPER.readerFor(Account.class);
+    public static final ObjectWriter WRITER = MAPPER.writer();
+
+    /**
+     * Field names, pre-encoded once so that writing them is a plain byte copy.
+     */
+    private static final SerializedString MESSAGE_ID = new SerializedString("message_id");
+    private static final SerializedString POSTED_BY = new SerializedString("posted_by");
+    private static final SerializedString MESSAGE_TEXT = new SerializedString("message_text");
+    private static final SerializedString TIME_POSTED_EPOCH = new SerializedString("time_posted_epoch");
+    private static final SerializedString ACCOUNT_ID = new SerializedString("account_id");
+    private static final SerializedString USERNAME = new SerializedString("username");
+    private static final SerializedString PASSWORD = new SerializedString("password");
+
+    /**
+     * Readers for other target types, built on first use.
+     */
+    private static final Map<Type, ObjectReader> READERS = new ConcurrentHashMap<>();
+
+    private static ObjectMapper createMapper() {
+        SimpleModule module = new SimpleModule("SocialMediaModels");
+        module.addSerializer(Message.class, new MessageSerializer());
+        module.addDeserializer(Message.class, new MessageDeserializer());
+        module.addSerializer(Account.class, new AccountSerializer());
+        module.addDeserializer(Account.class, new AccountDeserializer());
+
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.registerModule(module);
+        return mapper;
+    }
+
+    public static ObjectMapper getMapper() {
+        return MAPPER;
+    }
+
+    /**
+     * @return the JsonFactory behind the shared mapper, for callers that drive a JsonGenerator themselves.
+     */
+    public static JsonFactory getFactory() {
+        return MAPPER.getFactory();
+    }
+
+    public static String toJson(Object value) throws JsonProcessingException {
+        return WRITER.writeValueAsString(value);
+    }
+
+    public static byte[] toJsonBytes(Object value) throws JsonProcessingException {
+        return WRITER.writeValueAsBytes(value);
+    }
+
+    public static <T> T fromJson(String json, Type type) throws JsonProcessingException {
+        return readerFor(type).readValue(json);
+    }
+
+    public static ObjectReader readerFor(Type type) {
+        if (type == Message.class) {
+            return MESSAGE_READER;
+        }
+        if (type == Account.class) {
+            return ACCOUNT_READER;
+        }
+        return READERS.computeIfAbsent(type, t -> MAPPER.readerFor(MAPPER.constructType(t)));
+    }
+
+    /**
+     * Writes a message as a JSON object, with the same field names and order as the Message bean.
+     */
+    public static void writeMessage(JsonGenerator generator, Message message) throws IOException {
+        generator.writeStartObject(message);
+        generator.writeFieldName(MESSAGE_ID);
+        generator.writeNumber(message.getMessage_id());
+        generator.writeFieldName(POSTED_BY);
+        generator.writeNumber(message.getPosted_by());
+        generator.writeFieldName(MESSAGE_TEXT);
+        generator.writeString(message.getMessage_text());
+        generator.writeFieldName(TIME_POSTED_EPOCH);
+        generator.writeNumber(message.getTime_posted_epoch());
+        generator.writeEndObject();
+    }
+
+    /**
+     * Writes an account as a JSON object, with the same field names and order as the Account bean.
+     */
+    public static void writeAccount(JsonGenerator generator, Account account) throws IOException {
+        generator.writeStartObject(account);
+        generator.writeFieldName(ACCOUNT_ID);
+        generator.writeNumber(account.getAccount_id());
+        generator.writeFieldName(USERNAME);
+        generator.writeString(account.getUsername());
+        generator.writeFieldName(PASSWORD);
+        generator.writeString(account.getPassword());
+        generator.writeEndObject();
+    }
+
+    private static class MessageSerializer extends StdSerializer<Message> {
+        private static final long serialVersionUID = 1L;
+
+        MessageSerializer() {
+            super(Message.class);
+        }
+
+        @Override
+        public void serialize(Message message, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            writeMessage(generator, message);
+        }
+    }
+
+    private static class AccountSerializer extends StdSerializer<Account> {
+        private static final long serialVersionUID = 1L;
+
+        AccountSerializer() {
+            super(Account.class);
+        }
+
+        @Override
+        public void serialize(Account account, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            writeAccount(generator, account);
+        }
+    }
+
+    private static class MessageDeserializer extends StdDeserializer<Message> {
+        private static final long serialVersionUID = 1L;
+
+        MessageDeserializer() {
+            super(Message.class);
+        }
+
+        @Override
+        public Message deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            Message message = new Message();
+            JsonToken token = firstField(parser, context, Message.class);
+            while (token == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                token = parser.nextToken();
+                try {
+                    switch (field) {
+                        case "message_id":
+                            message.setMessage_id(_parseIntPrimitive(parser, context));
+                            break;
+                        case "posted_by":
+                            message.setPosted_by(_parseIntPrimitive(parser, context));
+                            break;
+                        case "message_text":
+                            message.setMessage_text(
+                                    token == JsonToken.VALUE_NULL ? null : _parseString(parser, context));
+                            break;
+                        case "time_posted_epoch":
+                            message.setTime_posted_epoch(_parseLongPrimitive(parser, context));
+                            break;
+                        default:
+                            context.handleUnknownProperty(parser, this, message, field);
+                    }
+                } catch (IOException e) {
+                    throw JsonMappingException.wrapWithPath(e, message, field);
+                }
+                token = parser.nextToken();
+            }
+            return message;
+        }
+    }
+
+    private static class AccountDeserializer extends StdDeserializer<Account> {
+        private static final long serialVersionUID = 1L;
+
+        AccountDeserializer() {
+            super(Account.class);
+        }
+
+        @Override
+        public Account deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            Account account = new Account();
+            JsonToken token = firstField(parser, context, Account.class);
+            while (token == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                token = parser.nextToken();
+                try {
+                    switch (field) {
+                        case "account_id":
+                            account.setAccount_id(_parseIntPrimitive(parser, context));
+                            break;
+                        case "username":
+                            account.setUsername(token == JsonToken.VALUE_NULL ? null : _parseString(parser, context));
+                            break;
+                        case "password":
+                            account.setPassword(token == JsonToken.VALUE_NULL ? null : _parseString(parser, context));
+                            break;
+                        default:
+                            context.handleUnknownProperty(parser, this, account, field);
+                    }
+                } catch (IOException e) {
+                    throw JsonMappingException.wrapWithPath(e, account, field);
+                }
+                token = parser.nextToken();
+            }
+            return account;
+        }
+    }
+
+    /**
+     * Positions the parser on the first field of an object, whether or not the caller has already consumed the
+     * START_OBJECT token, and rejects anything that is not an object.
+     * @return the current token: FIELD_NAME, or END_OBJECT for an empty object.
+     */
+    private static JsonToken firstField(JsonParser parser, DeserializationContext context, Class<?> type)
+            throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.START_OBJECT) {
+            token = parser.nextToken();
+        }
+        if (token != JsonToken.FIELD_NAME && token != JsonToken.END_OBJECT) {
+            context.handleUnexpectedToken(type, parser);
+        }
+        return token;
+    }
+}
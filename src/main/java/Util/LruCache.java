@@ -0,0 +1,177 @@
+package Util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * A thread-safe, size-bounded cache that evicts the least recently used entry once it is full, and counts hits,
+ * misses and evictions.
+ *
+ * getOrLoad() guards against the classic read-through race where a reader loads a row, a writer then changes or
+ * deletes it and invalidates the key, and the reader finally caches the value it read before the write. Every
+ * invalidation bumps a generation counter, and a loaded value is only stored if no invalidation happened while it
+ * was being loaded. Callers must invalidate after their write has been committed.
+ *
+ * @param <K> the key type.
+ * @param <V> the value type; null values are never cached.
+ */
+public class LruCache<K, V> {
+
+    private final int maxSize;
+    private final LinkedHashMap<K, V> entries;
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public LruCache(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be at least 1");
+        }
+        this.maxSize = maxSize;
+        // accessOrder = true makes iteration order least-recently-accessed first, which is what eviction needs
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                if (size() > LruCache.this.maxSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @return the cached value, or null on a miss.
+     */
+    public V get(K key) {
+        V value;
+        synchronized (entries) {
+            value = entries.get(key);
+        }
+        if (value != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return value;
+    }
+
+    /**
+     * Returns the cached value, or loads it with the loader and caches it. The loader runs outside the cache lock,
+     * so a slow load never blocks other keys.
+     * @return the cached or loaded value, or null if the loader found nothing.
+     */
+    public V getOrLoad(K key, Function<K, V> loader) {
+        V value = get(key);
+        if (value != null) {
+            return value;
+        }
+        long loadGeneration = generation();
+        value = loader.apply(key);
+        if (value != null) {
+            putIfCurrent(key, value, loadGeneration);
+        }
+        return value;
+    }
+
+    /**
+     * @return the current invalidation generation; take it before reading the value that will be cached.
+     */
+    public long generation() {
+        return generation.get();
+    }
+
+    /**
+     * Caches a value read by the caller, unless some key was invalidated after loadGeneration was taken.
+     * @return true if the value was cached.
+     */
+    public boolean putIfCurrent(K key, V value, long loadGeneration) {
+        synchronized (entries) {
+            if (generation.get() != loadGeneration) {
+                return false;
+            }
+            entries.put(key, value);
+            return true;
+        }
+    }
+
+    /**
+     * Caches a value that the caller knows to be current, for example a row it has just inserted.
+     */
+    public void put(K key, V value) {
+        synchronized (entries) {
+            entries.put(key, value);
+        }
+    }
+
+    /**
+     * Caches the value unless the key is already cached, atomically.
+     * @return the value that was already cached, or null if value was stored.
+     */
+    public V putIfAbsent(K key, V value) {
+        synchronized (entries) {
+            V existing = entries.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            entries.put(key, value);
+            return null;
+        }
+    }
+
+    /**
+     * Drops the key and makes any load that is still in flight discard its result.
+     */
+    public void invalidate(K key) {
+        synchronized (entries) {
+            generation.incrementAndGet();
+            entries.remove(key);
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (entries) {
+            generation.incrementAndGet();
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "LruCache{" +
+                "size=" + size() +
+                ", max=" + maxSize +
+                ", hits=" + getHitCount() +
+                ", misses=" + getMissCount() +
+                ", evictions=" + getEvictionCount() +
+                '}';
+    }
+}
@@ -0,0 +1,183 @@
+package Util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Moves message slots between shards (see MessageShards), for example after adding shards. Run it with the
+ * application stopped and with the application's -Ddb.url and -Ddb.message.* settings, since a running application
+ * keeps routing by the slot owners it read at startup:
+ *
+ *     java -Ddb.message.shards=4 ... Util.MessageShardRebalancer          spreads the slots evenly over all shards
+ *     java -Ddb.message.shards=4 ... Util.MessageShardRebalancer 5 3 9 0  moves slot 5 to shard 3 and slot 9 to 0
+ *
+ * Even spreading moves as few slots as it can: only shards above their share give slots away. To retire a shard,
+ * move its slots off explicitly before lowering db.message.shards.
+ *
+ * The new owners are recorded first. Then every row on a shard that no longer owns its slot is copied to the owner
+ * and deleted, one slot at a time, with the copy committed before the delete. The copy is a MERGE on message_id, so
+ * an interrupted run can simply be repeated, and a repeat finishes whatever moves the interrupted run left behind.
+ */
+public class MessageShardRebalancer {
+
+    private static final int COPY_BATCH_SIZE = 1000;
+
+    public static void main(String[] args) throws SQLException {
+        if (!MessageShards.isSlotted()) {
+            System.out.println("Messages are not sharded: set -Ddb.message.slots above 1 first");
+            return;
+        }
+        int[] current = MessageShards.getSlotShards();
+        int[] target = args.length == 0
+                ? balance(current, MessageShards.getShardCount())
+                : assign(current, MessageShards.getShardCount(), args);
+
+        for (int slot = 0; slot < target.length; slot++) {
+            if (target[slot] != current[slot]) {
+                System.out.println("Slot " + slot + ": shard " + current[slot] + " -> " + target[slot]);
+            }
+        }
+        MessageShards.assignSlots(target);
+        long moved = moveStrayRows();
+        System.out.println("Moved " + moved + " messages");
+    }
+
+    /**
+     * @return owners that give every shard an equal share of the slots, give or take one. Slots only leave shards
+     * holding more than their share, and the extra slot of an uneven split goes to the shards holding most already.
+     */
+    static int[] balance(int[] slotShards, int shardCount) {
+        int[] target = slotShards.clone();
+        int[] owned = new int[shardCount];
+        for (int shard : target) {
+            owned[shard]++;
+        }
+
+        Integer[] byOwned = new Integer[shardCount];
+        for (int shard = 0; shard < shardCount; shard++) {
+            byOwned[shard] = shard;
+        }
+        Arrays.sort(byOwned, (a, b) -> owned[b] - owned[a]);
+        int[] share = new int[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            share[byOwned[i]] = target.length / shardCount + (i < target.length % shardCount ? 1 : 0);
+        }
+
+        int receiver = 0;
+        for (int slot = target.length - 1; slot >= 0; slot--) {
+            int giver = target[slot];
+            if (owned[giver] <= share[giver]) {
+                continue;
+            }
+            while (owned[receiver] >= share[receiver]) {
+                receiver++;
+            }
+            target[slot] = receiver;
+            owned[giver]--;
+            owned[receiver]++;
+        }
+        return target;
+    }
+
+    /**
+     * @param moves pairs of slot and new shard.
+     * @throws IllegalArgumentException if the moves are not pairs or name a slot or shard that does not exist.
+     */
+    static int[] assign(int[] slotShards, int shardCount, String[] moves) {
+        if (moves.length % 2 != 0) {
+            throw new IllegalArgumentException("Expected pairs of slot and shard");
+        }
+        int[] target = slotShards.clone();
+        for (int i = 0; i < moves.length; i += 2) {
+            int slot = Integer.parseInt(moves[i]);
+            int shard = Integer.parseInt(moves[i + 1]);
+            if (slot < 0 || slot >= target.length || shard < 0 || shard >= shardCount) {
+                throw new IllegalArgumentException("No slot " + slot + " or no shard " + shard);
+            }
+            target[slot] = shard;
+        }
+        return target;
+    }
+
+    /**
+     * Moves every row stored on a shard other than the owner of its slot.
+     * @return the number of rows moved.
+     */
+    static long moveStrayRows() throws SQLException {
+        long moved = 0;
+        int[] owners = MessageShards.getSlotShards();
+        for (int shard : MessageShards.getAllShards()) {
+            for (int slot : slotsStoredOn(shard)) {
+                if (owners[slot] != shard) {
+                    moved += moveSlot(slot, shard, owners[slot]);
+                }
+            }
+        }
+        return moved;
+    }
+
+    private static List<Integer> slotsStoredOn(int shard) throws SQLException {
+        List<Integer> slots = new ArrayList<>();
+        try (Connection conn = MessageShards.getConnection(shard);
+             PreparedStatement stmt = conn.prepareStatement("SELECT DISTINCT MOD(message_id, ?) FROM message")) {
+            stmt.setInt(1, MessageShards.getSlotCount());
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    slots.add(rs.getInt(1));
+                }
+            }
+        }
+        return slots;
+    }
+
+    private static long moveSlot(int slot, int from, int to) throws SQLException {
+        long copied = 0;
+        String select = "SELECT message_id, posted_by, message_text, time_posted_epoch FROM message "
+                + "WHERE MOD(message_id, ?) = ?";
+        String merge = "MERGE INTO message (message_id, posted_by, message_text, time_posted_epoch) "
+                + "KEY (message_id) VALUES (?, ?, ?, ?)";
+        try (Connection source = MessageShards.getConnection(from);
+             Connection target = MessageShards.getConnection(to)) {
+            target.setAutoCommit(false);
+            try (PreparedStatement read = source.prepareStatement(select);
+                 PreparedStatement write = target.prepareStatement(merge)) {
+                read.setInt(1, MessageShards.getSlotCount());
+                read.setInt(2, slot);
+                read.setFetchSize(COPY_BATCH_SIZE);
+                try (ResultSet rs = read.executeQuery()) {
+                    while (rs.next()) {
+                        write.setInt(1, rs.getInt("message_id"));
+                        write.setInt(2, rs.getInt("posted_by"));
+                        write.setString(3, rs.getString("message_text"));
+                        write.setLong(4, rs.getLong("time_posted_epoch"));
+                        write.addBatch();
+                        if (++copied % COPY_BATCH_SIZE == 0) {
+                            write.executeBatch();
+                        }
+                    }
+                }
+                write.executeBatch();
+                target.commit();
+            } catch (SQLException e) {
+                target.rollback();
+                throw e;
+            } finally {
+                target.setAutoCommit(true);
+            }
+
+            try (PreparedStatement delete = source.prepareStatement(
+                    "DELETE FROM message WHERE MOD(message_id, ?) = ?")) {
+                delete.setInt(1, MessageShards.getSlotCount());
+                delete.setInt(2, slot);
+                delete.executeUpdate();
+            }
+        }
+        System.out.println("Slot " + slot + ": moved " + copied + " messages from shard " + from + " to " + to);
+        return copied;
+    }
+}
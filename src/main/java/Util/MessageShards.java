@@ -0,0 +1,369 @@
+package Util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * Splits the message table across several H2 databases ("shards") by author, so that inserts and per-account
+ * listings are spread over several files instead of contending for one.
+ *
+ * Authors are hashed into a fixed number of slots (-Ddb.message.slots), and each slot lives on one shard
+ * (-Ddb.message.shards). Every message id encodes its slot as message_id % slots, and a message is always stored in
+ * the slot of its author, so both an id and a posted_by lead straight to one shard. Shard 0 is the primary database,
+ * which also holds accounts and follows; shard n > 0 is opened from -Ddb.message.shardUrl with n substituted.
+ *
+ * Which shard owns which slot is recorded in the message_slot table on the primary and read once at startup.
+ * MessageShardRebalancer moves slots between shards with the application stopped; since ids name a slot rather than
+ * a shard, messages keep their ids when they move. The slot count therefore cannot change once messages exist, and
+ * it bounds the id space: ids are drawn from one sequence on the primary as sequence * slots + slot, which keeps
+ * them increasing in posting order across shards, but leaves room for about 2^31 / slots messages. For the same
+ * reason slots can only be turned on while the message table is empty: earlier ids are plain auto-increment values
+ * whose remainder says nothing about their author, so routing by it would lose those messages.
+ *
+ * With the defaults of one shard and one slot nothing is created and every call goes to the primary, exactly as
+ * before sharding.
+ */
+public class MessageShards {
+
+    private static final int SHARD_COUNT = Integer.getInteger("db.message.shards", 1);
+    /**
+     * Defaults to one slot for a single shard, which keeps ids as the table's own auto-increment values. Set it above
+     * one on a new database, while still on a single shard, to be able to add shards later.
+     */
+    private static final int SLOT_COUNT =
+            Integer.getInteger("db.message.slots", SHARD_COUNT == 1 ? 1 : Math.max(16, SHARD_COUNT));
+    private static final String SHARD_URL = System.getProperty("db.message.shardUrl",
+            "jdbc:h2:./h2/message-shard-%d;");
+    /**
+     * Threads that query the other shards in parallel with the calling thread. Override with
+     * -Ddb.message.scatterThreads.
+     */
+    private static final int SCATTER_THREADS = Integer.getInteger("db.message.scatterThreads", 8);
+
+    /**
+     * Pools for shards 1 and up; the primary's pool serves shard 0.
+     */
+    private static final List<ConnectionPool> shardPools = new ArrayList<>();
+    private static final List<Integer> allShards = new ArrayList<>();
+    private static final Bulkhead scatter;
+
+    /**
+     * The shard of each slot. Replaced as a whole when slots move, so readers need no lock.
+     */
+    private static volatile int[] slotShards = new int[SLOT_COUNT];
+
+    static {
+        if (SHARD_COUNT < 1 || SLOT_COUNT < SHARD_COUNT) {
+            throw new IllegalStateException("db.message.shards must be at least 1 and db.message.slots at least "
+                    + "db.message.shards");
+        }
+        for (int shard = 0; shard < SHARD_COUNT; shard++) {
+            allShards.add(shard);
+            if (shard > 0) {
+                shardPools.add(ConnectionUtil.openPool(String.format(SHARD_URL, shard)));
+            }
+        }
+        scatter = SHARD_COUNT > 1 ? new Bulkhead("shard-scatter", SCATTER_THREADS, 256) : null;
+        if (isSlotted()) {
+            try {
+                for (int shard = 1; shard < SHARD_COUNT; shard++) {
+                    createShardSchema(shard);
+                }
+                slotShards = loadSlotShards();
+            } catch (SQLException e) {
+                throw new IllegalStateException("Could not set up the message shards", e);
+            }
+        }
+    }
+
+    private MessageShards() {
+    }
+
+    /**
+     * @return true if message ids encode a slot, which is the case whenever there is more than one slot.
+     */
+    public static boolean isSlotted() {
+        return SLOT_COUNT > 1;
+    }
+
+    public static int getShardCount() {
+        return SHARD_COUNT;
+    }
+
+    public static int getSlotCount() {
+        return SLOT_COUNT;
+    }
+
+    /**
+     * @return every shard, in order, starting with the primary.
+     */
+    public static List<Integer> getAllShards() {
+        return allShards;
+    }
+
+    public static int slotOfAccount(int postedBy) {
+        // Account ids are sequential, so mix them before taking the remainder to spread neighbours apart
+        int hash = postedBy * 0x9E3779B9;
+        hash ^= hash >>> 16;
+        return Math.floorMod(hash, SLOT_COUNT);
+    }
+
+    public static int slotOfMessage(int messageId) {
+        return Math.floorMod(messageId, SLOT_COUNT);
+    }
+
+    public static int shardOfAccount(int postedBy) {
+        return slotShards[slotOfAccount(postedBy)];
+    }
+
+    public static int shardOfMessage(int messageId) {
+        return slotShards[slotOfMessage(messageId)];
+    }
+
+    /**
+     * Connections must be closed so that they are returned to their shard's pool.
+     * @return an active connection to the shard, or null if none could be borrowed.
+     */
+    public static Connection getConnection(int shard) {
+        if (shard == 0) {
+            return ConnectionUtil.getConnection();
+        }
+        try {
+            return shardPools.get(shard - 1).borrow();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * As getConnection, except that reads from the primary may be served by one of its replicas.
+     */
+    public static Connection getReadConnection(int shard) {
+        return shard == 0 ? ConnectionUtil.getReadConnection() : getConnection(shard);
+    }
+
+    /**
+     * @return the pool of shard 1 and up, for reading its live statistics.
+     */
+    public static ConnectionPool getShardPool(int shard) {
+        return shardPools.get(shard - 1);
+    }
+
+    /**
+     * @return the number of slots the shard owns.
+     */
+    public static int getSlotCountOf(int shard) {
+        int count = 0;
+        for (int owner : slotShards) {
+            if (owner == shard) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Reserves ids for new messages, one per author, from the primary's sequence in a single round trip. Sequence
+     * values are never handed out twice, even if the insert that reserved them rolls back.
+     * @param primary a connection to the primary the caller already holds, so that it never waits for a second one
+     * from the same pool; or null to borrow one.
+     * @return an id in each author's slot, in the order given.
+     * @throws SQLException if the sequence cannot be read or the id space is exhausted.
+     */
+    public static int[] nextMessageIds(Connection primary, List<Integer> postedBy) throws SQLException {
+        if (primary == null) {
+            try (Connection conn = ConnectionUtil.getConnection()) {
+                return nextMessageIds(conn, postedBy);
+            }
+        }
+        int[] messageIds = new int[postedBy.size()];
+        String sql = "SELECT NEXT VALUE FOR message_seq FROM SYSTEM_RANGE(1, ?)";
+        try (PreparedStatement stmt = primary.prepareStatement(sql)) {
+            stmt.setInt(1, messageIds.length);
+            try (ResultSet rs = stmt.executeQuery()) {
+                for (int i = 0; i < messageIds.length; i++) {
+                    if (!rs.next()) {
+                        throw new SQLException("message_seq returned fewer values than requested");
+                    }
+                    long messageId = rs.getLong(1) * SLOT_COUNT + slotOfAccount(postedBy.get(i));
+                    if (messageId > Integer.MAX_VALUE) {
+                        throw new SQLException("message_id space is exhausted for " + SLOT_COUNT + " slots");
+                    }
+                    messageIds[i] = (int) messageId;
+                }
+            }
+        }
+        return messageIds;
+    }
+
+    /**
+     * Runs query once per shard, querying the other shards in parallel while the calling thread queries the first
+     * one. A caller inside ConnectionUtil.readFromPrimary keeps that guarantee on the other threads. If the scatter
+     * threads are saturated the query runs on the calling thread instead, so a busy moment slows a read rather than
+     * failing it.
+     * @return the results in the order of shards.
+     */
+    public static <T> List<T> scatter(List<Integer> shards, IntFunction<T> query) {
+        if (shards.isEmpty()) {
+            return Collections.emptyList();
+        }
+        if (shards.size() == 1) {
+            return Collections.singletonList(query.apply(shards.get(0)));
+        }
+        boolean primaryOnly = ConnectionUtil.isReadingFromPrimary();
+        List<CompletableFuture<T>> others = new ArrayList<>(shards.size() - 1);
+        for (int shard : shards.subList(1, shards.size())) {
+            Supplier<T> work = primaryOnly
+                    ? () -> ConnectionUtil.readFromPrimary(() -> query.apply(shard))
+                    : () -> query.apply(shard);
+            try {
+                others.add(scatter.supply(work));
+            } catch (RejectedExecutionException e) {
+                others.add(CompletableFuture.completedFuture(work.get()));
+            }
+        }
+        List<T> results = new ArrayList<>(shards.size());
+        results.add(query.apply(shards.get(0)));
+        for (CompletableFuture<T> other : others) {
+            results.add(other.join());
+        }
+        return results;
+    }
+
+    /**
+     * Deletes every message on shards 1 and up, for ConnectionUtil.resetTestDatabase().
+     */
+    static void clearOtherShards() {
+        for (int shard = 1; shard < SHARD_COUNT; shard++) {
+            try (Connection conn = getConnection(shard);
+                 Statement stmt = conn.createStatement()) {
+                stmt.execute("DELETE FROM message");
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * @return a copy of the shard of each slot.
+     */
+    static int[] getSlotShards() {
+        return slotShards.clone();
+    }
+
+    /**
+     * Records new owners for slots, in one transaction on the primary, and routes this process by them from now on.
+     */
+    static void assignSlots(int[] newSlotShards) throws SQLException {
+        String sql = "UPDATE message_slot SET shard = ? WHERE slot = ?";
+        try (Connection conn = ConnectionUtil.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                for (int slot = 0; slot < newSlotShards.length; slot++) {
+                    stmt.setInt(1, newSlotShards[slot]);
+                    stmt.setInt(2, slot);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+        slotShards = newSlotShards.clone();
+    }
+
+    /**
+     * Creates the message table on a shard other than the primary. It has the primary's columns and indexes but no
+     * foreign key, since accounts live on the primary; MessageService checks that the author exists instead.
+     */
+    private static void createShardSchema(int shard) throws SQLException {
+        try (Connection conn = getConnection(shard);
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS message ("
+                    + "message_id int primary key, "
+                    + "posted_by int, "
+                    + "message_text varchar(255), "
+                    + "time_posted_epoch bigint)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_message_posted_by_id ON message (posted_by, message_id)");
+            stmt.execute("DROP INDEX IF EXISTS idx_message_posted_by");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_message_posted_by_time_posted "
+                    + "ON message (posted_by, time_posted_epoch, message_id)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_message_time_posted "
+                    + "ON message (time_posted_epoch, message_id)");
+        }
+    }
+
+    /**
+     * Creates the id sequence and the slot table on the primary if they are missing, giving any slot without an
+     * owner to shard slot % shards, and reads the owners.
+     * @throws IllegalStateException if slots are being turned on for a message table that already has rows, if the
+     * slot count changed, or if a slot belongs to a shard that is not configured.
+     */
+    private static int[] loadSlotShards() throws SQLException {
+        try (Connection conn = ConnectionUtil.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS message_slot (slot int primary key, shard int not null)");
+
+            int[] shards = new int[SLOT_COUNT];
+            Arrays.fill(shards, -1);
+            int recorded = 0;
+            try (ResultSet rs = stmt.executeQuery("SELECT slot, shard FROM message_slot")) {
+                while (rs.next()) {
+                    int slot = rs.getInt("slot");
+                    if (slot >= SLOT_COUNT) {
+                        throw new IllegalStateException("message_slot has slot " + slot + " but db.message.slots is "
+                                + SLOT_COUNT + "; message ids encode the slot, so the slot count cannot change");
+                    }
+                    shards[slot] = rs.getInt("shard");
+                    recorded++;
+                }
+            }
+            if (recorded > 0 && recorded < SLOT_COUNT) {
+                throw new IllegalStateException("message_slot has " + recorded + " slots but db.message.slots is "
+                        + SLOT_COUNT + "; message ids encode the slot, so the slot count cannot change");
+            }
+            if (recorded == 0) {
+                try (ResultSet rs = stmt.executeQuery("SELECT 1 FROM message LIMIT 1")) {
+                    if (rs.next()) {
+                        throw new IllegalStateException("message already has rows, whose ids do not encode their "
+                                + "author's slot; db.message.slots can only be raised above 1 while message is empty");
+                    }
+                }
+            }
+            stmt.execute("CREATE SEQUENCE IF NOT EXISTS message_seq");
+
+            try (PreparedStatement insert = conn.prepareStatement(
+                    "INSERT INTO message_slot (slot, shard) VALUES (?, ?)")) {
+                for (int slot = 0; slot < SLOT_COUNT; slot++) {
+                    if (shards[slot] < 0) {
+                        shards[slot] = slot % SHARD_COUNT;
+                        insert.setInt(1, slot);
+                        insert.setInt(2, shards[slot]);
+                        insert.addBatch();
+                    } else if (shards[slot] >= SHARD_COUNT) {
+                        throw new IllegalStateException("Slot " + slot + " is on shard " + shards[slot] + " but "
+                                + "db.message.shards is " + SHARD_COUNT + "; rebalance before removing shards");
+                    }
+                }
+                insert.executeBatch();
+            }
+            return shards;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package Util;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.DoubleSupplier;
+
+/**
+ * The application's metrics registry, rendered in the Prometheus text exposition format by writePrometheus().
+ *
+ * Latency is recorded into LatencyHistograms that callers look up once, when a route or DAO is set up, and then keep
+ * in a field, so the hot path never touches this registry. Everything else is a gauge or counter read through a
+ * callback at scrape time: the pool, caches and queues already count their own activity, and registering a callback
+ * under an existing name replaces it, so a component that is recreated (as the tests do) reports its latest instance.
+ */
+public class Metrics {
+
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99 };
+
+    /**
+     * Families by metric name, sorted so the output is stable between scrapes.
+     */
+    private static final Map<String, Family> FAMILIES = new ConcurrentSkipListMap<>();
+
+    static {
+        registerJvmMetrics();
+    }
+
+    private Metrics() {
+    }
+
+    /**
+     * @return the latency histogram of one HTTP route, created on first use.
+     */
+    public static LatencyHistogram routeTimer(String method, String path) {
+        return timer("http_request_duration_seconds", "HTTP request latency by route, including time spent queued.",
+                "method=\"" + escape(method) + "\",route=\"" + escape(path) + "\"");
+    }
+
+    /**
+     * @return the latency histogram of one DAO method, created on first use.
+     */
+    public static LatencyHistogram daoTimer(String operation) {
+        return timer("dao_call_duration_seconds", "DAO method latency, including waiting for a pooled connection.",
+                "operation=\"" + escape(operation) + "\"");
+    }
+
+    private static LatencyHistogram timer(String name, String help, String labels) {
+        Family family = family(name, help, "summary");
+        return (LatencyHistogram) family.series.computeIfAbsent(labels, l -> new LatencyHistogram());
+    }
+
+    /**
+     * Registers a value that can go up and down, such as a queue depth.
+     */
+    public static void gauge(String name, String help, DoubleSupplier value) {
+        family(name, help, "gauge").series.put("", value);
+    }
+
+    /**
+     * Registers one labelled series of a gauge, for example the queue depth of one executor among several.
+     */
+    public static void gauge(String name, String help, String labelName, String labelValue, DoubleSupplier value) {
+        family(name, help, "gauge").series.put(labelName + "=\"" + escape(labelValue) + "\"", value);
+    }
+
+    /**
+     * Registers a monotonically increasing count. By Prometheus convention the name should end in _total.
+     */
+    public static void counter(String name, String help, DoubleSupplier value) {
+        family(name, help, "counter").series.put("", value);
+    }
+
+    /**
+     * Registers one labelled series of a counter.
+     */
+    public static void counter(String name, String help, String labelName, String labelValue, DoubleSupplier value) {
+        family(name, help, "counter").series.put(labelName + "=\"" + escape(labelValue) + "\"", value);
+    }
+
+    private static Family family(String name, String help, String type) {
+        Family family = FAMILIES.computeIfAbsent(name, n -> new Family(help, type));
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as a " + family.type);
+        }
+        return family;
+    }
+
+    /**
+     * Appends every metric in the Prometheus text format (version 0.0.4). Durations are reported in seconds.
+     */
+    public static void writePrometheus(StringBuilder out) {
+        for (Map.Entry<String, Family> entry : FAMILIES.entrySet()) {
+            String name = entry.getKey();
+            Family family = entry.getValue();
+            out.append("# HELP ").append(name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(family.type).append('\n');
+            for (Map.Entry<String, Object> series : family.series.entrySet()) {
+                String labels = series.getKey();
+                if (series.getValue() instanceof LatencyHistogram) {
+                    writeSummary(out, name, labels, (LatencyHistogram) series.getValue());
+                } else {
+                    writeSample(out, name, labels, ((DoubleSupplier) series.getValue()).getAsDouble());
+                }
+            }
+        }
+    }
+
+    private static void writeSummary(StringBuilder out, String name, String labels, LatencyHistogram histogram) {
+        String separator = labels.isEmpty() ? "" : ",";
+        for (double quantile : QUANTILES) {
+            writeSample(out, name, labels + separator + "quantile=\"" + quantile + "\"",
+                    seconds(histogram.getQuantileNanos(quantile)));
+        }
+        writeSample(out, name, labels + separator + "quantile=\"1.0\"", seconds(histogram.getMaxNanos()));
+        writeSample(out, name + "_sum", labels, seconds(histogram.getSumNanos()));
+        writeSample(out, name + "_count", labels, histogram.getCount());
+    }
+
+    private static void writeSample(StringBuilder out, String name, String labels, double value) {
+        out.append(name);
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ');
+        if (value == (long) value) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / 1e9;
+    }
+
+    private static String escape(String labelValue) {
+        return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static void registerJvmMetrics() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        gauge("jvm_memory_heap_used_bytes", "Heap in use.",
+                () -> memory.getHeapMemoryUsage().getUsed());
+        gauge("jvm_memory_heap_committed_bytes", "Heap committed by the JVM.",
+                () -> memory.getHeapMemoryUsage().getCommitted());
+        gauge("jvm_memory_heap_max_bytes", "Maximum heap size, or -1 if undefined.",
+                () -> memory.getHeapMemoryUsage().getMax());
+        gauge("jvm_memory_nonheap_used_bytes", "Non-heap memory in use.",
+                () -> memory.getNonHeapMemoryUsage().getUsed());
+
+        Family collections = family("jvm_gc_collections_total", "Garbage collections by collector.", "counter");
+        Family collectionTime = family("jvm_gc_collection_seconds_total",
+                "Approximate time spent in garbage collection by collector.", "counter");
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            String labels = "gc=\"" + escape(gc.getName()) + "\"";
+            collections.series.put(labels, (DoubleSupplier) gc::getCollectionCount);
+            collectionTime.series.put(labels, (DoubleSupplier) () -> gc.getCollectionTime() / 1000.0);
+        }
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        gauge("jvm_threads_live", "Live platform threads.", threads::getThreadCount);
+    }
+
+    private static class Family {
+        private final String help;
+        private final String type;
+        /**
+         * Label set (already rendered, e.g. route="/messages") to a LatencyHistogram or a DoubleSupplier.
+         */
+        private final Map<String, Object> series = new ConcurrentSkipListMap<>();
+
+        private Family(String help, String type) {
+            this.help = help;
+            this.type = type;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package Util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * An opaque keyset cursor over the message table. A cursor remembers the sort key of the last row on a page, so the
+ * next page can be fetched with an indexed "greater than" seek instead of an OFFSET scan.
+ *
+ * Clients only ever see the encoded form, a URL-safe Base64 string, and hand it back unchanged in the after parameter.
+ */
+public class PageCursor {
+
+    /**
+     * The orderings a page can be requested in. Both end with message_id so that every row has a unique position.
+     */
+    public enum Order {
+        MESSAGE_ID("message_id"),
+        TIME_POSTED_EPOCH("time_posted_epoch");
+
+        private final String column;
+
+        Order(String column) {
+            this.column = column;
+        }
+
+        public String getColumn() {
+            return column;
+        }
+
+        /**
+         * @param column the order_by query parameter, or null for the default ordering.
+         * @return the matching Order.
+         * @throws IllegalArgumentException if the column is not a supported ordering.
+         */
+        public static Order fromColumn(String column) {
+            if (column == null || column.isBlank()) {
+                return MESSAGE_ID;
+            }
+            for (Order order : values()) {
+                if (order.column.equals(column)) {
+                    return order;
+                }
+            }
+            throw new IllegalArgumentException("Unsupported order_by: " + column);
+        }
+    }
+
+    private final Order order;
+    private final long timePostedEpoch;
+    private final int messageId;
+
+    private PageCursor(Order order, long timePostedEpoch, int messageId) {
+        this.order = order;
+        this.timePostedEpoch = timePostedEpoch;
+        this.messageId = messageId;
+    }
+
+    /**
+     * @return a cursor positioned before the first row in the given ordering.
+     */
+    public static PageCursor first(Order order) {
+        return new PageCursor(order, Long.MIN_VALUE, Integer.MIN_VALUE);
+    }
+
+    /**
+     * @return a cursor positioned directly after the given row.
+     */
+    public static PageCursor after(Order order, long timePostedEpoch, int messageId) {
+        return new PageCursor(order, timePostedEpoch, messageId);
+    }
+
+    public Order getOrder() {
+        return order;
+    }
+
+    public long getTimePostedEpoch() {
+        return timePostedEpoch;
+    }
+
+    public int getMessageId() {
+        return messageId;
+    }
+
+    /**
+     * @return the opaque string handed to clients.
+     */
+    public String encode() {
+        String raw = order == Order.MESSAGE_ID
+                ? "i:" + messageId
+                : "t:" + timePostedEpoch + ":" + messageId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param encoded a string previously produced by encode().
+     * @return the decoded cursor.
+     * @throws IllegalArgumentException if the string is not a cursor this class produced.
+     */
+    public static PageCursor decode(String encoded) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(encoded), StandardCharsets.UTF_8);
+            String[] parts = raw.split(":");
+            if (parts.length == 2 && parts[0].equals("i")) {
+                return new PageCursor(Order.MESSAGE_ID, Long.MIN_VALUE, Integer.parseInt(parts[1]));
+            }
+            if (parts.length == 3 && parts[0].equals("t")) {
+                return new PageCursor(Order.TIME_POSTED_EPOCH, Long.parseLong(parts[1]), Integer.parseInt(parts[2]));
+            }
+        } catch (IllegalArgumentException e) {
+            // fall through to the error below; NumberFormatException is an IllegalArgumentException too
+        }
+        throw new IllegalArgumentException("Malformed cursor: " + encoded);
+    }
+}
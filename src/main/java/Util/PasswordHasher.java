@@ -0,0 +1,92 @@
+package Util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * Hashes and verifies passwords with PBKDF2-HMAC-SHA256, which is deliberately slow: a single verification takes on
+ * the order of 100 ms of CPU at the default iteration count. Callers should run it off the request threads.
+ *
+ * A stored hash reads "pbkdf2-sha256$iterations$salt$hash", with the salt and hash in Base64, so the iteration count
+ * can be raised later and old hashes still verify. Anything else in the password column is a plaintext password from
+ * before hashing was introduced; it still verifies, and needsRehash tells the caller to replace it.
+ */
+public class PasswordHasher {
+
+    private static final String SCHEME = "pbkdf2-sha256";
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    /**
+     * Iterations for new hashes, as recommended for PBKDF2-HMAC-SHA256. Override with -Dauth.pbkdf2.iterations.
+     */
+    private static final int ITERATIONS = Integer.getInteger("auth.pbkdf2.iterations", 310_000);
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private PasswordHasher() {
+    }
+
+    public static String hash(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        RANDOM.nextBytes(salt);
+        Base64.Encoder base64 = Base64.getEncoder().withoutPadding();
+        return SCHEME + "$" + ITERATIONS + "$" + base64.encodeToString(salt) + "$"
+                + base64.encodeToString(pbkdf2(password, salt, ITERATIONS));
+    }
+
+    /**
+     * Checks a password against a stored hash, in time that does not depend on where they differ.
+     */
+    public static boolean verify(String password, String stored) {
+        if (password == null || stored == null) {
+            return false;
+        }
+        String[] fields = stored.split("\\$");
+        if (fields.length != 4 || !fields[0].equals(SCHEME)) {
+            // A plaintext password from before hashing
+            return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8),
+                    stored.getBytes(StandardCharsets.UTF_8));
+        }
+        try {
+            Base64.Decoder base64 = Base64.getDecoder();
+            byte[] expected = base64.decode(fields[3]);
+            return MessageDigest.isEqual(expected, pbkdf2(password, base64.decode(fields[2]),
+                    Integer.parseInt(fields[1])));
+        } catch (IllegalArgumentException e) {
+            e.printStackTrace();
+            return false; // Corrupt hash
+        }
+    }
+
+    /**
+     * @return true if stored is a plaintext password or was hashed with fewer iterations than new hashes use.
+     */
+    public static boolean needsRehash(String stored) {
+        String[] fields = stored.split("\\$");
+        if (fields.length != 4 || !fields[0].equals(SCHEME)) {
+            return true;
+        }
+        try {
+            return Integer.parseInt(fields[1]) < ITERATIONS;
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e); // Every JDK ships it
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package Util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A token bucket per key (such as an account_id): each key may take up to burst permits at once, refilled at
+ * permitsPerSecond.
+ *
+ * Each bucket is a single long, the time at which it will next be full, updated with compare-and-set: this is the
+ * generic cell rate algorithm form of a token bucket, in which a bucket is empty when that time is burst refill
+ * periods away. Taking a permit therefore never locks and costs a map lookup plus one CAS.
+ *
+ * A bucket that has been full for idleMillis behaves exactly like a missing one, so buckets idle that long are
+ * removed by a sweep that at most one caller at a time runs, at most once every idleMillis.
+ */
+public class RateLimiter {
+
+    private final String name;
+    private final long nanosPerPermit;
+    private final long burstNanos;
+    private final long idleNanos;
+
+    private final ConcurrentHashMap<Integer, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final AtomicLong lastSweep = new AtomicLong(System.nanoTime());
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param permitsPerSecond the steady rate each key is allowed.
+     * @param burst the most permits a key can take at once after being idle.
+     * @param idleMillis how long a full bucket is kept before it is removed.
+     */
+    public RateLimiter(String name, double permitsPerSecond, int burst, long idleMillis) {
+        if (permitsPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("permitsPerSecond must be positive and burst at least 1");
+        }
+        this.name = name;
+        this.nanosPerPermit = Math.max(1, (long) (1_000_000_000L / permitsPerSecond));
+        this.burstNanos = nanosPerPermit * burst;
+        this.idleNanos = idleMillis * 1_000_000L;
+    }
+
+    /**
+     * Takes permits from key's bucket if it holds that many.
+     * @return 0 if they were taken, otherwise how many nanoseconds to wait before they will be available.
+     */
+    public long tryAcquire(int key, int permits) {
+        long now = System.nanoTime();
+        long cost = nanosPerPermit * permits;
+        AtomicLong bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+        }
+        while (true) {
+            long fullAt = bucket.get();
+            // A bucket holds at most burst permits, so time spent full is not credited
+            long next = Math.max(fullAt, now) + cost;
+            if (next - now > burstNanos) {
+                rejected.increment();
+                sweepIfDue(now);
+                return next - now - burstNanos;
+            }
+            if (bucket.compareAndSet(fullAt, next)) {
+                allowed.increment();
+                sweepIfDue(now);
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Gives back permits taken with tryAcquire that ended up unused, for example because another check turned the
+     * request away after all. A bucket that has refilled since never ends up holding more than burst permits.
+     */
+    public void refund(int key, int permits) {
+        AtomicLong bucket = buckets.get(key);
+        if (bucket == null) {
+            return; // Swept as idle, so it is full already
+        }
+        bucket.addAndGet(-nanosPerPermit * permits);
+        allowed.decrement();
+    }
+
+    /**
+     * @return true if this many permits can ever be taken in one go, which needs them to fit in a full bucket.
+     */
+    public boolean fits(int permits) {
+        return nanosPerPermit * permits <= burstNanos;
+    }
+
+    private void sweepIfDue(long now) {
+        long last = lastSweep.get();
+        if (now - last < idleNanos || !lastSweep.compareAndSet(last, now)) {
+            return;
+        }
+        // A caller holding a bucket that is removed here at worst gets one burst too many
+        for (Map.Entry<Integer, AtomicLong> entry : buckets.entrySet()) {
+            if (now - entry.getValue().get() > idleNanos) {
+                buckets.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the number of keys with a bucket that has not been swept.
+     */
+    public int size() {
+        return buckets.size();
+    }
+
+    public long getAllowedCount() {
+        return allowed.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+}
@@ -0,0 +1,142 @@
+package Util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Chooses and applies a Content-Encoding for response bodies, and counts what it costs and saves.
+ *
+ * Only bodies of at least minSize bytes are compressed: below that the gzip header and the CPU time outweigh the
+ * bytes saved, which keeps single messages and error bodies as they are while the large listings shrink several
+ * times over. Only gzip is offered; brotli would compress JSON somewhat better but needs a native codec that this
+ * build does not ship.
+ */
+public class ResponseCompressor {
+
+    public static final String GZIP = "gzip";
+
+    private final int minSize;
+    private final int level;
+
+    private final LongAdder compressedCount = new LongAdder();
+    private final LongAdder inputBytes = new LongAdder();
+    private final LongAdder outputBytes = new LongAdder();
+    private final LongAdder compressNanos = new LongAdder();
+
+    /**
+     * @param minSize the smallest body, in bytes, worth compressing.
+     * @param level the gzip level, from 1 (fastest) to 9 (smallest).
+     */
+    public ResponseCompressor(int minSize, int level) {
+        if (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("level must be between 1 and 9");
+        }
+        this.minSize = minSize;
+        this.level = level;
+    }
+
+    /**
+     * Picks an encoding the client accepts, honouring q=0 exclusions and the '*' wildcard.
+     * @param acceptEncoding the request's Accept-Encoding header, or null.
+     * @return GZIP, or null to send the body as it is.
+     */
+    public static String negotiate(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        Boolean gzip = null;
+        boolean wildcard = false;
+        for (String part : acceptEncoding.split(",")) {
+            String[] fields = part.split(";");
+            String coding = fields[0].trim().toLowerCase(Locale.ROOT);
+            boolean accepted = true;
+            for (int i = 1; i < fields.length; i++) {
+                String parameter = fields[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        accepted = Double.parseDouble(parameter.substring(2)) > 0;
+                    } catch (NumberFormatException e) {
+                        accepted = false;
+                    }
+                }
+            }
+            if (coding.equals(GZIP) || coding.equals("x-gzip")) {
+                gzip = accepted;
+            } else if (coding.equals("*")) {
+                wildcard = accepted;
+            }
+        }
+        return (gzip != null ? gzip : wildcard) ? GZIP : null;
+    }
+
+    /**
+     * @return true if a body of this many bytes should be compressed.
+     */
+    public boolean isWorthCompressing(long length) {
+        return length >= minSize;
+    }
+
+    /**
+     * Compresses a whole body, recording its size before and after and the time taken.
+     */
+    public byte[] compress(byte[] body, String encoding) {
+        if (!GZIP.equals(encoding)) {
+            throw new IllegalArgumentException("unsupported encoding: " + encoding);
+        }
+        long start = System.nanoTime();
+        // Compressed JSON is rarely more than a quarter of the original
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, body.length / 4));
+        try (OutputStream out = compressStream(compressed, encoding)) {
+            out.write(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // Not thrown by an in-memory stream
+        }
+        byte[] result = compressed.toByteArray();
+        compressNanos.add(System.nanoTime() - start);
+        compressedCount.increment();
+        inputBytes.add(body.length);
+        outputBytes.add(result.length);
+        return result;
+    }
+
+    /**
+     * Wraps a stream whose length is not known in advance, such as a streamed listing. Its bytes are not counted.
+     * The caller must finish or close the returned stream to write the gzip trailer.
+     */
+    public GZIPOutputStream compressStream(OutputStream out, String encoding) throws IOException {
+        if (!GZIP.equals(encoding)) {
+            throw new IllegalArgumentException("unsupported encoding: " + encoding);
+        }
+        return new GZIPOutputStream(out, 8192) {
+            {
+                def.setLevel(level);
+            }
+        };
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public long getCompressedCount() {
+        return compressedCount.sum();
+    }
+
+    public long getInputBytes() {
+        return inputBytes.sum();
+    }
+
+    public long getOutputBytes() {
+        return outputBytes.sum();
+    }
+
+    public long getCompressNanos() {
+        return compressNanos.sum();
+    }
+}
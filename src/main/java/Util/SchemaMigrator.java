@@ -0,0 +1,135 @@
+package Util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+import org.h2.tools.RunScript;
+
+/**
+ * Applies the numbered scripts in src/main/resources/db/migration to the database, each exactly once.
+ *
+ * The scripts are listed, in order, in db/migration/migrations.list and are named V{version}__{description}.sql.
+ * Every applied script is recorded in the schema_version table together with a checksum, so restarting the
+ * application only runs scripts that are new, and a script that was edited after it shipped is reported instead of
+ * silently diverging. Unlike ConnectionUtil.resetTestDatabase(), migrating never drops existing data.
+ */
+public class SchemaMigrator {
+
+    private static final String MIGRATION_DIR = "db/migration/";
+    private static final String MIGRATION_LIST = MIGRATION_DIR + "migrations.list";
+
+    /**
+     * Brings the schema up to date.
+     * @return the number of scripts that were applied.
+     * @throws IllegalStateException if a script cannot be read or run, or an applied script has been modified.
+     */
+    public static synchronized int migrate() {
+        try (Connection conn = ConnectionUtil.getConnection()) {
+            createVersionTable(conn);
+            Map<Integer, Long> applied = appliedChecksums(conn);
+
+            int count = 0;
+            for (String script : listScripts()) {
+                int version = versionOf(script);
+                String sql = readResource(MIGRATION_DIR + script);
+                long checksum = checksum(sql);
+
+                Long appliedChecksum = applied.get(version);
+                if (appliedChecksum != null) {
+                    if (appliedChecksum != checksum) {
+                        throw new IllegalStateException("Migration " + script + " was modified after it was applied");
+                    }
+                    continue;
+                }
+
+                RunScript.execute(conn, new StringReader(sql));
+                recordVersion(conn, version, script, checksum);
+                count++;
+            }
+            return count;
+        } catch (SQLException | IOException e) {
+            throw new IllegalStateException("Schema migration failed", e);
+        }
+    }
+
+    private static void createVersionTable(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS schema_version ("
+                    + "version int primary key, "
+                    + "script varchar(255), "
+                    + "checksum bigint, "
+                    + "installed_on timestamp default current_timestamp)");
+        }
+    }
+
+    private static Map<Integer, Long> appliedChecksums(Connection conn) throws SQLException {
+        Map<Integer, Long> applied = new HashMap<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT version, checksum FROM schema_version")) {
+            while (rs.next()) {
+                applied.put(rs.getInt("version"), rs.getLong("checksum"));
+            }
+        }
+        return applied;
+    }
+
+    private static void recordVersion(Connection conn, int version, String script, long checksum) throws SQLException {
+        String sql = "INSERT INTO schema_version (version, script, checksum) VALUES (?, ?, ?)";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, version);
+            stmt.setString(2, script);
+            stmt.setLong(3, checksum);
+            stmt.executeUpdate();
+        }
+    }
+
+    private static List<String> listScripts() throws IOException {
+        List<String> scripts = new ArrayList<>();
+        for (String line : readResource(MIGRATION_LIST).split("\n")) {
+            line = line.trim();
+            if (!line.isEmpty() && !line.startsWith("#")) {
+                scripts.add(line);
+            }
+        }
+        return scripts;
+    }
+
+    private static int versionOf(String script) {
+        int separator = script.indexOf("__");
+        if (!script.startsWith("V") || separator < 2) {
+            throw new IllegalStateException("Migration script name must look like V1__description.sql: " + script);
+        }
+        return Integer.parseInt(script.substring(1, separator));
+    }
+
+    private static String readResource(String name) throws IOException {
+        InputStream in = SchemaMigrator.class.getClassLoader().getResourceAsStream(name);
+        if (in == null) {
+            throw new IOException("Missing migration resource " + name);
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            return reader.lines().collect(Collectors.joining("\n"));
+        }
+    }
+
+    private static long checksum(String sql) {
+        CRC32 crc = new CRC32();
+        crc.update(sql.getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+}
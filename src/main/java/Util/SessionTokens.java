@@ -0,0 +1,204 @@
+package Util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Issues and checks stateless session tokens: "keyId.accountId.expiresAt.signature", where the signature is an
+ * HMAC-SHA256 of the first three fields. Checking one needs no database and no shared state beyond the keys, so any
+ * request can be authenticated in a few microseconds.
+ *
+ * Keys rotate. With -Dauth.token.keys (comma-separated Base64 secrets, the first one signing and all of them
+ * verifying) every instance shares the same keys, and operators rotate by putting a new key first and dropping the
+ * oldest once its tokens have expired. Without it, each process generates its own signing key, replaces it every
+ * rotateMillis, and keeps each retired key until the last token it signed has expired.
+ */
+public class SessionTokens {
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int KEY_BYTES = 32;
+
+    private final long ttlMillis;
+    private final long rotateMillis;
+    private final boolean configured;
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * Verification keys by key id, newest first. Replaced as a whole on rotation, so readers need no lock.
+     */
+    private volatile Map<String, SigningKey> keys;
+
+    /**
+     * @param ttlMillis how long a token stays valid.
+     * @param rotateMillis how often a generated signing key is replaced; ignored for configured keys.
+     * @param configuredKeys Base64 secrets, the first of which signs; empty to generate keys.
+     */
+    public SessionTokens(long ttlMillis, long rotateMillis, List<String> configuredKeys) {
+        if (ttlMillis <= 0 || rotateMillis <= 0) {
+            throw new IllegalArgumentException("ttlMillis and rotateMillis must be positive");
+        }
+        this.ttlMillis = ttlMillis;
+        this.rotateMillis = rotateMillis;
+        this.configured = !configuredKeys.isEmpty();
+        Map<String, SigningKey> initial = new LinkedHashMap<>();
+        if (configured) {
+            for (String secret : configuredKeys) {
+                SigningKey key = new SigningKey(Base64.getDecoder().decode(secret.trim()), Long.MAX_VALUE);
+                initial.put(key.id, key);
+            }
+        } else {
+            SigningKey key = generateKey();
+            initial.put(key.id, key);
+        }
+        this.keys = Collections.unmodifiableMap(initial);
+    }
+
+    /**
+     * @return a token proving the bearer is accountId until getTtlMillis from now.
+     */
+    public String issue(int accountId) {
+        SigningKey key = signingKey();
+        String claims = key.id + "." + accountId + "." + (System.currentTimeMillis() + ttlMillis) / 1000;
+        return claims + "." + key.sign(claims);
+    }
+
+    /**
+     * @return the account the token was issued to, or null if it is malformed, forged, signed with a key that has
+     * been dropped, or expired.
+     */
+    public Integer verify(String token) {
+        if (token == null) {
+            return null;
+        }
+        int signatureStart = token.lastIndexOf('.');
+        if (signatureStart < 0) {
+            return null;
+        }
+        String claims = token.substring(0, signatureStart);
+        String[] fields = claims.split("\\.");
+        if (fields.length != 3) {
+            return null;
+        }
+        SigningKey key = keys.get(fields[0]);
+        if (key == null) {
+            return null;
+        }
+        byte[] expected = key.sign(claims).getBytes(StandardCharsets.US_ASCII);
+        byte[] signature = token.substring(signatureStart + 1).getBytes(StandardCharsets.US_ASCII);
+        if (!MessageDigest.isEqual(expected, signature)) {
+            return null;
+        }
+        try {
+            if (Long.parseLong(fields[2]) * 1000 <= System.currentTimeMillis()) {
+                return null; // Expired
+            }
+            return Integer.parseInt(fields[1]);
+        } catch (NumberFormatException e) {
+            return null; // Only possible with a valid signature if the key leaked
+        }
+    }
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    /**
+     * @return the number of keys tokens are currently accepted from.
+     */
+    public int getKeyCount() {
+        return keys.size();
+    }
+
+    private SigningKey signingKey() {
+        SigningKey current = keys.values().iterator().next();
+        if (configured || current.createdAt + rotateMillis > System.currentTimeMillis()) {
+            return current;
+        }
+        return rotate(current);
+    }
+
+    /**
+     * Makes a new signing key current, and drops retired keys whose tokens have all expired.
+     */
+    private synchronized SigningKey rotate(SigningKey expired) {
+        Map<String, SigningKey> current = keys;
+        SigningKey newest = current.values().iterator().next();
+        if (newest != expired) {
+            return newest; // Another thread rotated first
+        }
+        long now = System.currentTimeMillis();
+        Map<String, SigningKey> rotated = new LinkedHashMap<>();
+        SigningKey key = generateKey();
+        rotated.put(key.id, key);
+        SigningKey previous = null;
+        for (SigningKey old : current.values()) {
+            // A key stopped signing when the key before it in the list was created
+            long retiredAt = previous != null ? previous.createdAt : now;
+            if (retiredAt + ttlMillis > now) {
+                rotated.put(old.id, old);
+            }
+            previous = old;
+        }
+        keys = Collections.unmodifiableMap(rotated);
+        return key;
+    }
+
+    private SigningKey generateKey() {
+        byte[] secret = new byte[KEY_BYTES];
+        random.nextBytes(secret);
+        return new SigningKey(secret, System.currentTimeMillis());
+    }
+
+    /**
+     * Splits a comma-separated list of Base64 secrets, as given in -Dauth.token.keys.
+     */
+    public static List<String> parseKeys(String keys) {
+        List<String> parsed = new ArrayList<>();
+        if (keys != null) {
+            for (String key : keys.split(",")) {
+                if (!key.isBlank()) {
+                    parsed.add(key.trim());
+                }
+            }
+        }
+        return parsed;
+    }
+
+    private static class SigningKey {
+        private final String id;
+        private final SecretKeySpec secret;
+        private final long createdAt;
+
+        private SigningKey(byte[] secret, long createdAt) {
+            this.secret = new SecretKeySpec(secret, ALGORITHM);
+            this.createdAt = createdAt;
+            // Derived from the secret, so instances sharing a key agree on its id
+            this.id = sign("key-id", this.secret).substring(0, 8);
+        }
+
+        private String sign(String claims) {
+            return sign(claims, secret);
+        }
+
+        private static String sign(String data, SecretKeySpec secret) {
+            try {
+                Mac mac = Mac.getInstance(ALGORITHM);
+                mac.init(secret);
+                byte[] signature = mac.doFinal(data.getBytes(StandardCharsets.US_ASCII));
+                return Base64.getUrlEncoder().withoutPadding().encodeToString(signature);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(ALGORITHM + " is not available", e); // Every JDK ships it
+            }
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package Util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the prepared statements of one pooled connection open between borrows, keyed by SQL text (and the
+ * prepareStatement options), so a DAO method that runs the same query again skips H2's parse and plan step.
+ *
+ * Callers keep writing prepareStatement() and closing the result with try-with-resources: they get a proxy whose
+ * close() clears the parameters and hands the statement back to this cache instead of closing it. The cache is
+ * bounded and evicts the least recently used statement. A statement that is still checked out is never handed out
+ * twice; a second request for the same SQL at the same time gets an ordinary, uncached statement.
+ */
+class StatementCache {
+
+    private final int maxSize;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+    private final LinkedHashMap<List<Object>, CachedStatement> statements;
+
+    /**
+     * The hit, miss and eviction counters are shared by every connection of the pool.
+     */
+    StatementCache(int maxSize, LongAdder hits, LongAdder misses, LongAdder evictions) {
+        this.maxSize = maxSize;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<Object>, CachedStatement> eldest) {
+                if (size() <= StatementCache.this.maxSize) {
+                    return false;
+                }
+                StatementCache.this.evictions.increment();
+                CachedStatement cached = eldest.getValue();
+                if (cached.lease == null) {
+                    closeQuietly(cached.physical);
+                } else {
+                    cached.evicted = true; // closed once its current user hands it back
+                }
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Serves a prepareStatement call made on a pooled connection.
+     * @param physical the real connection.
+     * @param owner the connection proxy the caller holds, returned by the statement's getConnection().
+     * @param method the prepareStatement overload that was called.
+     * @param args its arguments, the SQL text first.
+     */
+    synchronized PreparedStatement prepare(Connection physical, Connection owner, Method method, Object[] args)
+            throws Throwable {
+        if (maxSize < 1 || !isCacheable(args)) {
+            return (PreparedStatement) invoke(method, physical, args);
+        }
+
+        List<Object> key = Arrays.asList(args);
+        CachedStatement cached = statements.get(key);
+        if (cached != null && cached.lease != null) {
+            // Already checked out by this same borrower; do not share it
+            misses.increment();
+            return (PreparedStatement) invoke(method, physical, args);
+        }
+        if (cached != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+            cached = new CachedStatement((PreparedStatement) invoke(method, physical, args));
+            statements.put(key, cached);
+        }
+
+        Object lease = new Object();
+        cached.lease = lease;
+        CachedStatement statement = cached;
+        InvocationHandler handler = (proxy, m, a) -> invokeStatement(statement, lease, owner, m, a);
+        return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                new Class<?>[] { PreparedStatement.class }, handler);
+    }
+
+    /**
+     * Hands back every statement the last borrower forgot to close, so the next borrower finds them reusable.
+     */
+    synchronized void releaseAll() {
+        for (CachedStatement cached : new ArrayList<>(statements.values())) {
+            if (cached.lease != null) {
+                giveBack(cached);
+            }
+        }
+    }
+
+    synchronized int size() {
+        return statements.size();
+    }
+
+    private Object invokeStatement(CachedStatement cached, Object lease, Connection owner, Method method,
+            Object[] args) throws Throwable {
+        synchronized (this) {
+            switch (method.getName()) {
+                case "close":
+                    if (cached.lease == lease) {
+                        giveBack(cached);
+                    }
+                    return null;
+                case "isClosed":
+                    return cached.lease != lease;
+                case "getConnection":
+                    return owner;
+                default:
+                    if (cached.lease != lease) {
+                        throw new SQLException("Statement has already been closed");
+                    }
+            }
+        }
+        return invoke(method, cached.physical, args);
+    }
+
+    private void giveBack(CachedStatement cached) {
+        cached.lease = null;
+        if (cached.evicted) {
+            closeQuietly(cached.physical);
+            return;
+        }
+        try {
+            cached.physical.clearParameters();
+            cached.physical.clearBatch();
+            cached.physical.clearWarnings();
+        } catch (SQLException e) {
+            // A statement that cannot be reset cannot be reused
+            statements.values().remove(cached);
+            closeQuietly(cached.physical);
+        }
+    }
+
+    private static boolean isCacheable(Object[] args) {
+        for (int i = 1; i < args.length; i++) {
+            if (!(args[i] instanceof Integer)) {
+                return false; // column index or name arrays; rare enough not to cache
+            }
+        }
+        return true;
+    }
+
+    private static Object invoke(Method method, Object target, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static class CachedStatement {
+        private final PreparedStatement physical;
+        /**
+         * Identifies the proxy currently using this statement, or null while it sits idle in the cache.
+         */
+        private Object lease;
+        private boolean evicted;
+
+        private CachedStatement(PreparedStatement physical) {
+            this.physical = physical;
+        }
+    }
+}
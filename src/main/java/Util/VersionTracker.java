@@ -0,0 +1,59 @@
+package Util;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts changes so that a response can be labelled with the version of the data it was built from, and a later
+ * request can learn whether that data changed without reading it again. There is one version for everything, and
+ * one for each key (for example a message_id or account_id).
+ *
+ * Per-key versions are kept in a fixed number of stripes rather than one counter per key: two keys that share a
+ * stripe also share a version, so a change to one makes the other look changed too. That only costs an unnecessary
+ * full response now and then, and memory stays constant however many keys there are.
+ *
+ * Versions only count changes made through this process and restart from zero, so every tag also carries an epoch
+ * that is unique to this tracker; a tag issued before a restart can never match.
+ */
+public class VersionTracker {
+
+    private static final int STRIPES = 4096;
+
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36)
+            + Integer.toString(ThreadLocalRandom.current().nextInt(1 << 20), 36);
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicLongArray stripes = new AtomicLongArray(STRIPES);
+
+    /**
+     * Records a change to key. Must be called after the change is committed and after any cache holding the old
+     * value has been invalidated, so that whoever sees the new version also sees the new data.
+     */
+    public void changed(int key) {
+        stripes.incrementAndGet(stripe(key));
+        version.incrementAndGet();
+    }
+
+    /**
+     * @return a tag that changes whenever anything changes.
+     */
+    public String tag() {
+        return epoch + "-" + version.get();
+    }
+
+    /**
+     * @return a tag that changes whenever key (or a key sharing its stripe) changes.
+     */
+    public String tag(int key) {
+        return epoch + "-" + key + "-" + stripes.get(stripe(key));
+    }
+
+    public long getVersion() {
+        return version.get();
+    }
+
+    private static int stripe(int key) {
+        int hash = key * 0x9E3779B9; // spread consecutive ids over the stripes
+        return (hash ^ (hash >>> 16)) & (STRIPES - 1);
+    }
+}
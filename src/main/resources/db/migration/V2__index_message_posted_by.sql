@@ -0,0 +1,2 @@
+-- GET /accounts/{account_id}/messages and the posted_by existence checks look messages up by author.
+create index if not exists idx_message_posted_by on message (posted_by);
@@ -0,0 +1,2 @@
+-- Per-account listings ordered by time, including keyset pages seeking past (time_posted_epoch, message_id).
+create index if not exists idx_message_posted_by_time_posted on message (posted_by, time_posted_epoch, message_id);
@@ -0,0 +1,2 @@
+-- Global listings ordered by time, including keyset pages seeking past (time_posted_epoch, message_id).
+create index if not exists idx_message_time_posted on message (time_posted_epoch, message_id);
@@ -0,0 +1,10 @@
+-- Who follows whom. The primary key serves "whom does X follow" (timeline loads); the second index serves
+-- "who follows X" (fan-out when X posts).
+create table if not exists follow (
+    follower_id int,
+    followee_id int,
+    primary key (follower_id, followee_id),
+    foreign key (follower_id) references account(account_id),
+    foreign key (followee_id) references account(account_id)
+);
+create index if not exists idx_follow_followee on follow (followee_id, follower_id);
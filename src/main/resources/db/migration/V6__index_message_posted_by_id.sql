@@ -0,0 +1,4 @@
+-- Per-account listings ordered by message_id, including keyset pages seeking past message_id. Its leading column
+-- also serves every lookup by author, so it replaces idx_message_posted_by.
+create index if not exists idx_message_posted_by_id on message (posted_by, message_id);
+drop index if exists idx_message_posted_by;
@@ -0,0 +1,106 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class CompressionTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient for interacting
+     * locally on the web. Enough messages are posted to take the full listing over the compression threshold.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+
+        StringBuilder batch = new StringBuilder("[");
+        for (int i = 0; i < 40; i++) {
+            batch.append(i == 0 ? "" : ", ").append("{\"posted_by\":1, \"message_text\": \"compressible message ")
+                    .append(i).append("\", \"time_posted_epoch\": 1669947800}");
+        }
+        HttpRequest postBatchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/batch"))
+                .POST(HttpRequest.BodyPublishers.ofString(batch.append("]").toString()))
+                .header("Content-Type", "application/json")
+                .build();
+        webClient.send(postBatchRequest, HttpResponse.BodyHandlers.ofString());
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending http requests to GET localhost:8080/messages with and without Accept-Encoding: gzip, and repeating
+     * the gzip request so it is answered from the compressed body cache, then streaming it gzipped
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: gzip-encoded and smaller when accepted, decompressing to the plain listing, also when streamed
+     */
+    @Test
+    public void getAllMessagesCompressed() throws IOException, InterruptedException {
+        HttpResponse<byte[]> plain = get("/messages", null);
+        Assert.assertEquals(200, plain.statusCode());
+        Assert.assertTrue(plain.headers().firstValue("Content-Encoding").isEmpty());
+
+        for (int i = 0; i < 2; i++) {
+            HttpResponse<byte[]> compressed = get("/messages", "br;q=1.0, gzip;q=0.8");
+            Assert.assertEquals(200, compressed.statusCode());
+            Assert.assertEquals("gzip", compressed.headers().firstValue("Content-Encoding").orElse(null));
+            Assert.assertTrue(compressed.body().length < plain.body().length);
+            byte[] decompressed = new GZIPInputStream(new ByteArrayInputStream(compressed.body())).readAllBytes();
+            Assert.assertArrayEquals(plain.body(), decompressed);
+        }
+
+        HttpResponse<byte[]> streamed = get("/messages?stream=true", "gzip");
+        Assert.assertEquals("gzip", streamed.headers().firstValue("Content-Encoding").orElse(null));
+        byte[] decompressed = new GZIPInputStream(new ByteArrayInputStream(streamed.body())).readAllBytes();
+        Assert.assertArrayEquals(plain.body(), decompressed);
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/1 with Accept-Encoding: gzip
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the single message, sent as it is because it is below the threshold
+     */
+    @Test
+    public void getMessageByIdNotCompressed() throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = get("/messages/1", "gzip");
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertTrue(response.headers().firstValue("Content-Encoding").isEmpty());
+        Assert.assertTrue(new String(response.body()).contains("test message 1"));
+    }
+
+    private HttpResponse<byte[]> get(String path, String acceptEncoding) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path));
+        if (acceptEncoding != null) {
+            request.header("Accept-Encoding", acceptEncoding);
+        }
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+}
@@ -0,0 +1,69 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.ConcurrencyLimiter;
+
+public class ConcurrencyLimiterTest {
+
+    /**
+     * Acquiring one permit more than the limit allows, with nobody releasing
+     *
+     * Expected Result:
+     *  The extra caller waits out the timeout, is turned away and counted; the permits in use are reported
+     */
+    @Test
+    public void acquireBeyondLimitIsRejectedAfterTimeout() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 100);
+        Assert.assertTrue(limiter.tryAcquire());
+        Assert.assertTrue(limiter.tryAcquire());
+        Assert.assertEquals(2, limiter.getInFlightCount());
+
+        long start = System.nanoTime();
+        Assert.assertFalse(limiter.tryAcquire());
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 90);
+        Assert.assertEquals(1, limiter.getRejectedCount());
+        Assert.assertEquals(0, limiter.getWaitingCount());
+
+        limiter.release();
+        Assert.assertEquals(1, limiter.getInFlightCount());
+        Assert.assertTrue(limiter.tryAcquire());
+    }
+
+    /**
+     * Waiting for a permit while another caller holds the only one, then releasing it
+     *
+     * Expected Result:
+     *  The waiter is reported as waiting and gets the permit as soon as it is released, without being rejected
+     */
+    @Test
+    public void waiterGetsReleasedPermit() throws InterruptedException {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 5000);
+        Assert.assertTrue(limiter.tryAcquire());
+
+        CompletableFuture<Boolean> waiter = CompletableFuture.supplyAsync(limiter::tryAcquire);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (limiter.getWaitingCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(1, limiter.getWaitingCount());
+
+        limiter.release();
+        Assert.assertTrue(waiter.join());
+        Assert.assertEquals(0, limiter.getRejectedCount());
+        Assert.assertEquals(1, limiter.getInFlightCount());
+    }
+
+    /**
+     * Creating a limiter that would never admit anyone
+     *
+     * Expected Result:
+     *  IllegalArgumentException
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroLimitIsRejected() {
+        new ConcurrencyLimiter(0, 100);
+    }
+}
@@ -0,0 +1,95 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class ConditionalGetTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient for interacting
+     * locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending http requests to GET localhost:8080/messages/1, /messages and /accounts/1/messages, then repeating
+     * each with If-None-Match set to the ETag it returned
+     *
+     * Expected Response:
+     *  Status Code: 200 with an ETag, then 304 with an empty body
+     */
+    @Test
+    public void getMessagesUnchangedNotModified() throws IOException, InterruptedException {
+        for (String path : new String[] {"/messages/1", "/messages", "/accounts/1/messages"}) {
+            HttpResponse<String> response = get(path, null);
+            Assert.assertEquals(200, response.statusCode());
+            String etag = response.headers().firstValue("ETag").orElse(null);
+            Assert.assertNotNull(etag);
+
+            HttpResponse<String> revalidated = get(path, etag);
+            Assert.assertEquals(304, revalidated.statusCode());
+            Assert.assertEquals("", revalidated.body());
+        }
+    }
+
+    /**
+     * Sending an http request to PATCH localhost:8080/messages/1, then revalidating the ETags taken before it
+     *
+     * Expected Response:
+     *  Status Code: 200 with a new ETag and the updated message
+     */
+    @Test
+    public void getMessageChangedReturnsNewETag() throws IOException, InterruptedException {
+        String messageEtag = get("/messages/1", null).headers().firstValue("ETag").orElseThrow();
+        String accountEtag = get("/accounts/1/messages", null).headers().firstValue("ETag").orElseThrow();
+
+        HttpRequest patchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"updated message\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        webClient.send(patchRequest, HttpResponse.BodyHandlers.ofString());
+
+        HttpResponse<String> response = get("/messages/1", messageEtag);
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertNotEquals(messageEtag, response.headers().firstValue("ETag").orElseThrow());
+        Assert.assertTrue(response.body().contains("updated message"));
+
+        Assert.assertEquals(200, get("/accounts/1/messages", accountEtag).statusCode());
+    }
+
+    private HttpResponse<String> get(String path, String ifNoneMatch) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path));
+        if (ifNoneMatch != null) {
+            request.header("If-None-Match", ifNoneMatch);
+        }
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
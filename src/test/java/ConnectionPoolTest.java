@@ -0,0 +1,193 @@
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.ConnectionPool;
+
+public class ConnectionPoolTest {
+    JdbcDataSource dataSource;
+
+    /**
+     * Before every test, point a DataSource at a fresh in-memory database that outlives its connections.
+     */
+    @Before
+    public void setUp() throws SQLException {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:pooltest;DB_CLOSE_DELAY=-1");
+        dataSource.setUser("sa");
+        dataSource.setPassword("sa");
+        try (Connection conn = dataSource.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS item (id int primary key)");
+            stmt.execute("DELETE FROM item");
+        }
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        try (Connection conn = dataSource.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP TABLE item");
+        }
+    }
+
+    /**
+     * Borrowing more connections than maxSize
+     *
+     * Expected Result:
+     *  The extra borrow fails with SQLTimeoutException after the borrow timeout and is counted; once a connection is
+     *  closed the next borrow succeeds
+     */
+    @Test
+    public void borrowBeyondMaxSizeTimesOut() throws SQLException {
+        ConnectionPool pool = new ConnectionPool(dataSource, 1, 100, 600_000, 0);
+        Connection first = pool.borrow();
+        long start = System.nanoTime();
+        try {
+            pool.borrow();
+            Assert.fail("Expected the second borrow to time out");
+        } catch (SQLTimeoutException e) {
+            Assert.assertTrue((System.nanoTime() - start) / 1_000_000 >= 90);
+        }
+        Assert.assertEquals(1, pool.getTimeoutCount());
+        Assert.assertEquals(1, pool.getActiveCount());
+
+        first.close();
+        try (Connection second = pool.borrow()) {
+            Assert.assertFalse(second.isClosed());
+        }
+    }
+
+    /**
+     * Closing a borrowed connection, then borrowing again
+     *
+     * Expected Result:
+     *  The same physical connection is reused rather than reopened, and uncommitted work is rolled back on return
+     */
+    @Test
+    public void closeReturnsConnectionToPool() throws SQLException {
+        ConnectionPool pool = new ConnectionPool(dataSource, 2, 1000, 600_000, 0);
+        try (Connection conn = pool.borrow(); Statement stmt = conn.createStatement()) {
+            conn.setAutoCommit(false);
+            stmt.execute("INSERT INTO item (id) VALUES (1)");
+        }
+        Assert.assertEquals(0, pool.getActiveCount());
+        Assert.assertEquals(1, pool.getIdleCount());
+
+        try (Connection conn = pool.borrow(); Statement stmt = conn.createStatement()) {
+            Assert.assertTrue(conn.getAutoCommit());
+            try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM item")) {
+                rs.next();
+                Assert.assertEquals(0, rs.getInt(1));
+            }
+        }
+        Assert.assertEquals(1, pool.getCreatedCount());
+        Assert.assertEquals(2, pool.getBorrowCount());
+    }
+
+    /**
+     * Using a connection after it has been closed
+     *
+     * Expected Result:
+     *  JDBC calls fail, a second close is harmless, and equals, hashCode and toString still work
+     */
+    @Test
+    public void useAfterCloseFails() throws SQLException {
+        ConnectionPool pool = new ConnectionPool(dataSource, 1, 1000, 600_000, 0);
+        Connection conn = pool.borrow();
+        int hashCode = conn.hashCode();
+        conn.close();
+
+        Assert.assertTrue(conn.isClosed());
+        try {
+            conn.createStatement();
+            Assert.fail("Expected a returned connection to reject use");
+        } catch (SQLException e) {
+            // expected
+        }
+        conn.close();
+        Assert.assertEquals(hashCode, conn.hashCode());
+        Assert.assertEquals(conn, conn);
+        Assert.assertTrue(conn.toString().contains("returned"));
+
+        // The stale reference's second close must not have released a permit twice
+        Connection next = pool.borrow();
+        Assert.assertNotEquals(conn, next);
+        Assert.assertEquals(1, pool.getActiveCount());
+        next.close();
+    }
+
+    /**
+     * Leaving a connection idle for longer than the idle timeout
+     *
+     * Expected Result:
+     *  The evictor closes it, so the pool holds no open connections
+     */
+    @Test
+    public void idleConnectionIsEvicted() throws SQLException, InterruptedException {
+        ConnectionPool pool = new ConnectionPool(dataSource, 1, 1000, 1, 0);
+        pool.borrow().close();
+        Assert.assertEquals(1, pool.getOpenCount());
+
+        // The evictor runs at most once a second
+        long deadline = System.currentTimeMillis() + 5000;
+        while (pool.getEvictedCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+        Assert.assertEquals(1, pool.getEvictedCount());
+        Assert.assertEquals(0, pool.getOpenCount());
+        Assert.assertEquals(0, pool.getIdleCount());
+    }
+
+    /**
+     * Closing a pool while one connection is idle and another is borrowed, then returning the borrowed one
+     *
+     * Expected Result:
+     *  The evictor thread stops and the idle connection is closed at once, the borrowed one when it is returned, and
+     *  borrowing again fails
+     */
+    @Test
+    public void closeStopsEvictorAndClosesConnections() throws SQLException, InterruptedException {
+        int evictorsBefore = countEvictorThreads();
+        ConnectionPool pool = new ConnectionPool(dataSource, 2, 1000, 600_000, 0);
+        Connection borrowed = pool.borrow();
+        pool.borrow().close();
+        Assert.assertEquals(2, pool.getOpenCount());
+        Assert.assertEquals(evictorsBefore + 1, countEvictorThreads());
+
+        pool.close();
+        Assert.assertEquals(1, pool.getOpenCount());
+        Assert.assertEquals(0, pool.getIdleCount());
+        borrowed.close();
+        Assert.assertEquals(0, pool.getOpenCount());
+        Assert.assertEquals(0, pool.getIdleCount());
+        try {
+            pool.borrow();
+            Assert.fail("Expected a closed pool to refuse borrows");
+        } catch (SQLException e) {
+            // expected
+        }
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (countEvictorThreads() > evictorsBefore && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(evictorsBefore, countEvictorThreads());
+    }
+
+    private static int countEvictorThreads() {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("connection-pool-evictor") && thread.isAlive()) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
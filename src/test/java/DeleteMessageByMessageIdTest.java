@@ -88,4 +88,32 @@ public class DeleteMessageByMessageIdTest {
         Assert.assertTrue(response.body().toString().isEmpty());
     }
     
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/1, then DELETE it, then GET it again
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: empty, even though the first GET had cached the message
+     */
+    @Test
+    public void deleteMessageThenRetrieveMessageNotFound() throws IOException, InterruptedException {
+        HttpRequest getRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .build();
+        webClient.send(getRequest, HttpResponse.BodyHandlers.ofString());
+
+        HttpRequest deleteRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .DELETE()
+                .build();
+        webClient.send(deleteRequest, HttpResponse.BodyHandlers.ofString());
+
+        HttpResponse response = webClient.send(getRequest, HttpResponse.BodyHandlers.ofString());
+        int status = response.statusCode();
+
+        Assert.assertEquals(200, status);
+        Assert.assertTrue(response.body().toString().isEmpty());
+    }
+
 }
@@ -0,0 +1,140 @@
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Model.Account;
+import Model.Message;
+import Model.MessageBatchResult;
+import Model.MessagePage;
+import Util.JsonCodec;
+
+public class JsonCodecTest {
+    /**
+     * A plain ObjectMapper, which serializes the models by reflection as every endpoint did before JsonCodec.
+     */
+    ObjectMapper reflective = new ObjectMapper();
+
+    /**
+     * Writing messages, accounts and the models that contain them, including text that needs escaping
+     *
+     * Expected Result:
+     *  Byte for byte the same JSON as the reflective ObjectMapper writes
+     */
+    @Test
+    public void writesSameJsonAsReflection() throws JsonProcessingException {
+        List<Object> values = new ArrayList<>();
+        values.add(new Message(1, 2, "plain", 1669947792L));
+        values.add(new Message(3, 4, "quote \" backslash \\ newline \n tab \t emoji \uD83D\uDE00 ctrl \u0001",
+                Long.MAX_VALUE));
+        values.add(new Message(0, 0, null, 0));
+        values.add(new Account(5, "user \"five\"", "p\u00E4ssword"));
+        values.add(new Account(0, null, null));
+        values.add(List.of(new Message(6, 7, "in a list", 1L), new Message(8, 9, "", -1L)));
+        values.add(new MessagePage(List.of(new Message(10, 11, "paged", 2L)), "cursor"));
+        values.add(List.of(new MessageBatchResult(200, new Message(12, 13, "created", 3L)),
+                new MessageBatchResult(400, null)));
+
+        for (Object value : values) {
+            Assert.assertEquals(reflective.writeValueAsString(value), JsonCodec.toJson(value));
+        }
+    }
+
+    /**
+     * Reading JSON written by the reflective ObjectMapper, and the reverse
+     *
+     * Expected Result:
+     *  Both sides read back the same objects
+     */
+    @Test
+    public void readsReflectiveJsonBack() throws JsonProcessingException {
+        List<Message> messages = List.of(
+                new Message(1, 2, "plain", 1669947792L),
+                new Message(3, 4, "escaped \" \\ \n \uD83D\uDE00", Long.MIN_VALUE));
+        String reflectiveJson = reflective.writeValueAsString(messages);
+        List<Message> read = JsonCodec.fromJson(reflectiveJson, new TypeReference<List<Message>>() {}.getType());
+        Assert.assertEquals(messages, read);
+        Assert.assertEquals(messages,
+                reflective.readValue(JsonCodec.toJson(messages), new TypeReference<List<Message>>() {}));
+
+        Account account = new Account(5, "user", "password");
+        Assert.assertEquals(account, JsonCodec.fromJson(reflective.writeValueAsString(account), Account.class));
+        Assert.assertEquals(account, reflective.readValue(JsonCodec.toJson(account), Account.class));
+    }
+
+    /**
+     * Reading request bodies as clients send them: fields in any order, some missing or null, numbers as strings or
+     * with a fraction
+     *
+     * Expected Result:
+     *  The same Message the reflective ObjectMapper reads
+     */
+    @Test
+    public void readsRequestBodiesLikeReflection() throws JsonProcessingException {
+        String json = "{\"time_posted_epoch\": \"1669947792\", \"message_text\": \"hi\", \"posted_by\": 1.0, "
+                + "\"message_id\": null}";
+        Message expected = reflective.readValue(json, Message.class);
+        Assert.assertEquals(expected, JsonCodec.fromJson(json, Message.class));
+        Assert.assertEquals(new Message(0, 1, "hi", 1669947792L), expected);
+
+        String accountJson = "{\"password\": \"pw\", \"username\": 12, \"account_id\": \"3\"}";
+        Assert.assertEquals(reflective.readValue(accountJson, Account.class),
+                JsonCodec.fromJson(accountJson, Account.class));
+    }
+
+    /**
+     * Reading request bodies with values of the wrong type: text or booleans in number fields, objects or arrays in
+     * any field, numbers too large for an int, and fields the models do not have
+     *
+     * Expected Result:
+     *  Rejected with the same exception as the reflective ObjectMapper throws, rather than read as 0, 1 or the
+     *  nested object's fields
+     */
+    @Test
+    public void rejectsMalformedBodiesLikeReflection() {
+        String[] messages = {
+                "{\"posted_by\": \"abc\"}",
+                "{\"time_posted_epoch\": true}",
+                "{\"posted_by\": {\"message_text\": \"smuggled\"}, \"time_posted_epoch\": 1}",
+                "{\"message_id\": [1], \"message_text\": \"after\"}",
+                "{\"message_text\": {\"nested\": \"text\"}}",
+                "{\"message_text\": [\"a\"]}",
+                "{\"message_id\": 99999999999}",
+                "{\"message_text\": \"hi\", \"extra\": 1}",
+                "[1, 2]"
+        };
+        for (String json : messages) {
+            assertRejectedLikeReflection(json, Message.class);
+        }
+        String[] accounts = {
+                "{\"account_id\": \"one\"}",
+                "{\"username\": {\"password\": \"smuggled\"}}",
+                "{\"password\": [\"a\"]}",
+                "{\"username\": \"user\", \"role\": \"admin\"}"
+        };
+        for (String json : accounts) {
+            assertRejectedLikeReflection(json, Account.class);
+        }
+    }
+
+    private void assertRejectedLikeReflection(String json, Class<?> type) {
+        Class<?> expected = null;
+        try {
+            reflective.readValue(json, type);
+        } catch (JsonProcessingException e) {
+            expected = e.getClass();
+        }
+        Assert.assertNotNull("Expected the reflective mapper to reject " + json, expected);
+        try {
+            JsonCodec.fromJson(json, type);
+            Assert.fail("Expected JsonCodec to reject " + json);
+        } catch (JsonProcessingException e) {
+            Assert.assertEquals(json, expected, e.getClass());
+        }
+    }
+}
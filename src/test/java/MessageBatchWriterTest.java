@@ -0,0 +1,155 @@
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.MessageBatchWriter;
+import Model.Message;
+import Util.ConnectionPool;
+import Util.ConnectionUtil;
+
+public class MessageBatchWriterTest {
+    MessageBatchWriter writer;
+
+    /**
+     * Before every test, reset the database so that account 1 exists and message ids continue from 2.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+    }
+
+    @After
+    public void tearDown() {
+        if (writer != null) {
+            writer.shutdown();
+            writer.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Submitting ten inserts within the writer's 500ms window
+     *
+     * Expected Result:
+     *  They are committed as one batch, and each caller gets its own message back with its own generated id
+     */
+    @Test
+    public void insertsWithinWindowShareOneBatch() {
+        writer = new MessageBatchWriter(64, 500, 100);
+        List<CompletableFuture<Message>> results = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            results.add(writer.submit(new Message(1, "batched " + i, 1669947800 + i)));
+        }
+
+        Set<Integer> ids = new HashSet<>();
+        for (int i = 0; i < 10; i++) {
+            Message created = results.get(i).join();
+            Assert.assertEquals("batched " + i, created.getMessage_text());
+            ids.add(created.getMessage_id());
+        }
+        Assert.assertEquals(10, ids.size());
+        Assert.assertEquals(1, writer.getBatchCount());
+        Assert.assertEquals(10, writer.getRowCount());
+    }
+
+    /**
+     * Submitting three inserts in one batch where the middle one names an account that does not exist
+     *
+     * Expected Result:
+     *  Only the bad insert fails; the batch is retried row by row and the other two are inserted
+     */
+    @Test
+    public void failedInsertDoesNotFailItsBatch() {
+        writer = new MessageBatchWriter(64, 500, 100);
+        CompletableFuture<Message> first = writer.submit(new Message(1, "before", 1669947800));
+        CompletableFuture<Message> bad = writer.submit(new Message(9999, "no such author", 1669947801));
+        CompletableFuture<Message> last = writer.submit(new Message(1, "after", 1669947802));
+
+        Assert.assertEquals("before", first.join().getMessage_text());
+        Assert.assertNull(bad.join());
+        Assert.assertEquals("after", last.join().getMessage_text());
+        Assert.assertEquals(1, writer.getFallbackCount());
+    }
+
+    /**
+     * Filling the queue while the writer is stuck waiting for a database connection
+     *
+     * Expected Result:
+     *  Inserts beyond the queue's capacity are rejected at once; the queued ones are written once the writer gets a
+     *  connection
+     */
+    @Test
+    public void fullQueueRejectsInserts() throws SQLException, InterruptedException {
+        writer = new MessageBatchWriter(1, 0, 2);
+        ConnectionPool pool = ConnectionUtil.getPool();
+        List<Connection> held = new ArrayList<>();
+        List<CompletableFuture<Message>> accepted = new ArrayList<>();
+        try {
+            while (held.size() < pool.getMaxSize()) {
+                held.add(ConnectionUtil.getConnection());
+            }
+            accepted.add(writer.submit(new Message(1, "taken by the writer", 1669947800)));
+            long deadline = System.currentTimeMillis() + 5000;
+            while (writer.getQueueDepth() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            accepted.add(writer.submit(new Message(1, "queued 1", 1669947801)));
+            accepted.add(writer.submit(new Message(1, "queued 2", 1669947802)));
+
+            CompletableFuture<Message> rejected = writer.submit(new Message(1, "no room", 1669947803));
+            Assert.assertTrue(rejected.isCompletedExceptionally());
+            Assert.assertEquals(1, writer.getRejectedCount());
+        } finally {
+            for (Connection conn : held) {
+                conn.close();
+            }
+        }
+        for (CompletableFuture<Message> result : accepted) {
+            Assert.assertNotNull(result.join());
+        }
+    }
+
+    /**
+     * Shutting the writer down while inserts are waiting in its window, then inserting again
+     *
+     * Expected Result:
+     *  The waiting inserts are still committed and the writer thread exits; later inserts are rejected
+     */
+    @Test
+    public void shutdownWritesQueuedInsertsThenRejects() {
+        writer = new MessageBatchWriter(64, 500, 100);
+        List<CompletableFuture<Message>> results = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            results.add(writer.submit(new Message(1, "queued " + i, 1669947800 + i)));
+        }
+        writer.shutdown();
+        Assert.assertTrue(writer.awaitTermination(5, TimeUnit.SECONDS));
+
+        for (CompletableFuture<Message> result : results) {
+            Assert.assertNotNull(result.join());
+        }
+        try {
+            writer.submit(new Message(1, "too late", 1669947803)).join();
+            Assert.fail("Expected an insert after shutdown to be rejected");
+        } catch (CompletionException e) {
+            Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+        try {
+            writer.write(new Message(1, "too late", 1669947804));
+            Assert.fail("Expected an insert after shutdown to be rejected");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+    }
+}
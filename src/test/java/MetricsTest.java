@@ -0,0 +1,77 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class MetricsTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient for interacting
+     * locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/1, then to GET localhost:8080/metrics
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: Prometheus text including the route and DAO latency of the first request, the bulkhead
+     *  queues, the message shards and JVM heap usage
+     */
+    @Test
+    public void getMetricsAfterRequest() throws IOException, InterruptedException {
+        HttpRequest messageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .build();
+        webClient.send(messageRequest, HttpResponse.BodyHandlers.ofString());
+
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/metrics"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertTrue(response.headers().firstValue("Content-Type").orElse("").startsWith("text/plain"));
+
+        String body = response.body();
+        Assert.assertTrue(body.contains("# TYPE http_request_duration_seconds summary"));
+        Assert.assertTrue(body.contains(
+                "http_request_duration_seconds{method=\"GET\",route=\"/messages/{message_id}\",quantile=\"0.99\"}"));
+        Assert.assertTrue(body.contains(
+                "http_request_duration_seconds_count{method=\"GET\",route=\"/messages/{message_id}\"}"));
+        Assert.assertFalse(body.contains(
+                "http_request_duration_seconds_count{method=\"GET\",route=\"/messages/{message_id}\"} 0\n"));
+        Assert.assertTrue(body.contains("dao_call_duration_seconds_count{operation=\"MessageDAO.getMessageById\"}"));
+        Assert.assertTrue(body.contains("bulkhead_queue_depth{bulkhead=\"lookup\"} 0\n"));
+        Assert.assertTrue(body.contains("message_shard_slots{shard=\"0\"} 1\n"));
+        Assert.assertTrue(body.contains("jvm_memory_heap_used_bytes "));
+        Assert.assertTrue(body.contains("jvm_gc_collections_total{gc="));
+    }
+}
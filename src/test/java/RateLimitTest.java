@@ -0,0 +1,112 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class RateLimitTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app with a burst of three messages per account and
+     * a slow refill, both one at a time and in batches, and create a new webClient for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        System.setProperty("ratelimit.message_create.burst", "3");
+        System.setProperty("ratelimit.message_create.perSecond", "0.1");
+        System.setProperty("ratelimit.message_batch.burst", "3");
+        System.setProperty("ratelimit.message_batch.perSecond", "0.1");
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("ratelimit.message_create.burst");
+        System.clearProperty("ratelimit.message_create.perSecond");
+        System.clearProperty("ratelimit.message_batch.burst");
+        System.clearProperty("ratelimit.message_batch.perSecond");
+    }
+
+    /**
+     * Sending four http requests to POST localhost:8080/messages for the same account in quick succession
+     *
+     * Expected Response:
+     *  Status Code: 200 for the first three, then 429 with a Retry-After header
+     *  Response Body: the rejected message is not created
+     */
+    @Test
+    public void createMessageOverRateLimit() throws IOException, InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(200, postMessage(1).statusCode());
+        }
+        HttpResponse<String> rejected = postMessage(1);
+        Assert.assertEquals(429, rejected.statusCode());
+        Assert.assertTrue(Long.parseLong(rejected.headers().firstValue("Retry-After").orElseThrow()) >= 1);
+
+        HttpRequest getRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/5"))
+                .build();
+        Assert.assertEquals("", webClient.send(getRequest, HttpResponse.BodyHandlers.ofString()).body());
+    }
+
+    /**
+     * Using up account 2's batch allowance, then sending an http request to POST localhost:8080/messages/batch with
+     * three messages by account 1 and one by account 2, then the same batch without account 2's message
+     *
+     * Expected Response:
+     *  Status Code: 429 for the mixed batch, which creates nothing and leaves account 1's allowance untouched, so
+     *  account 1's own batch of three is then accepted with 200
+     */
+    @Test
+    public void rejectedBatchChargesNoAuthor() throws IOException, InterruptedException {
+        Assert.assertEquals(200, postBatch(2, 2, 2).statusCode());
+
+        Assert.assertEquals(429, postBatch(1, 1, 1, 2).statusCode());
+        Assert.assertEquals(200, postBatch(1, 1, 1).statusCode());
+    }
+
+    private HttpResponse<String> postBatch(int... postedBy) throws IOException, InterruptedException {
+        StringBuilder body = new StringBuilder("[");
+        for (int i = 0; i < postedBy.length; i++) {
+            body.append(i > 0 ? ", " : "").append("{\"posted_by\":").append(postedBy[i])
+                    .append(", \"message_text\": \"batch message\", \"time_posted_epoch\": 1669947792}");
+        }
+        HttpRequest postBatchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/batch"))
+                .POST(HttpRequest.BodyPublishers.ofString(body.append("]").toString()))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(postBatchRequest, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> postMessage(int postedBy) throws IOException, InterruptedException {
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"posted_by\":" + postedBy + ", " +
+                        "\"message_text\": \"hello message\", " +
+                        "\"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+    }
+}
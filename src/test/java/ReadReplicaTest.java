@@ -0,0 +1,153 @@
+import java.io.FileReader;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import org.h2.tools.RunScript;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.MessageDAO;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class ReadReplicaTest {
+    static final String REPLICA_URL = "jdbc:h2:mem:replica;DB_CLOSE_DELAY=-1";
+
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database and give it an in-memory replica whose copy of message 1 has different
+     * text, so every read shows which database it came from. Reads may go to the replica straight after a write.
+     * Then restart the Javalin app, and create a new webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException, IOException, SQLException {
+        ConnectionUtil.resetTestDatabase();
+        try (Connection conn = DriverManager.getConnection(REPLICA_URL, "sa", "sa");
+             FileReader sqlReader = new FileReader("src/main/resources/SocialMedia.sql");
+             Statement stmt = conn.createStatement()) {
+            RunScript.execute(conn, sqlReader);
+            stmt.execute("UPDATE message SET message_text = 'replica copy' WHERE message_id = 1");
+        }
+        ConnectionUtil.setReplicas(REPLICA_URL, 0);
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        ConnectionUtil.setReplicas("", 1_000);
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/1/messages
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the replica's copy of message 1, with no ETag, since the replica may be behind the tag
+     */
+    @Test
+    public void listingIsReadFromReplica() throws IOException, InterruptedException {
+        long replicaReads = ConnectionUtil.getReplicaReadCount();
+        HttpResponse<String> response = getAccountMessages(false);
+
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals("replica copy", firstMessageText(response));
+        Assert.assertTrue(response.headers().firstValue("ETag").isEmpty());
+        Assert.assertEquals(replicaReads + 1, ConnectionUtil.getReplicaReadCount());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/1/messages with an X-Read-Your-Writes header
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the primary's copy of message 1, labelled with an ETag, and the replica is not read
+     */
+    @Test
+    public void readYourWritesListingIsReadFromPrimary() throws IOException, InterruptedException {
+        long replicaReads = ConnectionUtil.getReplicaReadCount();
+        HttpResponse<String> response = getAccountMessages(true);
+
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals("test message 1", firstMessageText(response));
+        Assert.assertTrue(response.headers().firstValue("ETag").isPresent());
+        Assert.assertEquals(replicaReads, ConnectionUtil.getReplicaReadCount());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/1, which is cached once read
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the primary's copy of message 1, since the cache must never hold a replica's copy
+     */
+    @Test
+    public void cachedMessageIsReadFromPrimary() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals("test message 1", objectMapper.readValue(response.body(), Message.class)
+                .getMessage_text());
+    }
+
+    /**
+     * Reading inside ConnectionUtil.readFromPrimary, then outside it within the lag bound after a write
+     *
+     * Expected Result:
+     *  Both reads see the primary's copy and neither is counted as a replica read
+     */
+    @Test
+    public void readsArePinnedToPrimary() {
+        long replicaReads = ConnectionUtil.getReplicaReadCount();
+        List<Message> pinned = ConnectionUtil.readFromPrimary(() -> MessageDAO.getMessagesByAccountId(1));
+        Assert.assertEquals("test message 1", pinned.get(0).getMessage_text());
+        Assert.assertEquals(replicaReads, ConnectionUtil.getReplicaReadCount());
+
+        ConnectionUtil.setReplicas(REPLICA_URL, 60_000);
+        ConnectionUtil.recordWrite();
+        Assert.assertEquals("test message 1", MessageDAO.getMessagesByAccountId(1).get(0).getMessage_text());
+        Assert.assertEquals(replicaReads, ConnectionUtil.getReplicaReadCount());
+    }
+
+    private HttpResponse<String> getAccountMessages(boolean readYourWrites) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/1/messages"));
+        if (readYourWrites) {
+            request.header("X-Read-Your-Writes", "true");
+        }
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private String firstMessageText(HttpResponse<String> response) throws IOException {
+        List<Message> messages = objectMapper.readValue(response.body(), new TypeReference<List<Message>>() { });
+        return messages.get(0).getMessage_text();
+    }
+}
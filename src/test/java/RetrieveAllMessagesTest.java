@@ -6,6 +6,7 @@ import java.net.http.HttpResponse;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -97,12 +98,69 @@ public class RetrieveAllMessagesTest {
         Assert.assertTrue(messages.isEmpty());
     }
 
+    /**
+     * Sending an http request to GET localhost:8080/messages?stream=true
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the same JSON list as the non-streamed listing
+     */
+    @Test
+    public void getAllMessagesStreamed() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages?stream=true"))
+                .build();
+        HttpResponse response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        int status = response.statusCode();
 
+        Assert.assertEquals(200, status);
 
-    private void removeInitialMessage(){
+        List<Message> expectedResult = new ArrayList<>();
+        expectedResult.add(new Message(1, 1, "test message 1", 1669947792));
+        List<Message> actualResult = objectMapper.readValue(response.body().toString(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(expectedResult, actualResult);
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?stream=true when reading fails partway through 20000
+     * messages, well after the first rows have been sent
+     *
+     * Expected Response:
+     *  The response is cut off rather than completed, so the client never gets a truncated but well-formed list
+     */
+    @Test
+    public void getAllMessagesStreamedReadFailure() throws InterruptedException, SQLException {
+        try (Connection conn = ConnectionUtil.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("INSERT INTO message (posted_by, message_text, time_posted_epoch) "
+                    + "SELECT 1, 'message ' || x, 1669947792 + x FROM SYSTEM_RANGE(1, 20000)");
+            // A copy in the table's place whose message 15000 has an author too large to read back as an int
+            stmt.execute("ALTER TABLE message RENAME TO message_stored");
+            stmt.execute("CREATE TABLE message (message_id int primary key, posted_by bigint, "
+                    + "message_text varchar(255), time_posted_epoch bigint)");
+            stmt.execute("INSERT INTO message SELECT message_id, "
+                    + "CASE WHEN message_id = 15000 THEN 1099511627776 ELSE posted_by END, message_text, "
+                    + "time_posted_epoch FROM message_stored");
+        }
         try {
-                Connection conn = ConnectionUtil.getConnection();
-                PreparedStatement ps = conn.prepareStatement("delete from message where message_id = ?");
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages?stream=true"))
+                    .build();
+            HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+            Assert.fail("Expected an incomplete response, got " + response.statusCode() + " with "
+                    + response.body().length() + " characters");
+        } catch (IOException e) {
+            // expected: the server dropped the connection before ending the body
+        } finally {
+            try (Connection conn = ConnectionUtil.getConnection(); Statement stmt = conn.createStatement()) {
+                stmt.execute("DROP TABLE message");
+                stmt.execute("ALTER TABLE message_stored RENAME TO message");
+            }
+        }
+    }
+
+    private void removeInitialMessage(){
+        try (Connection conn = ConnectionUtil.getConnection();
+                PreparedStatement ps = conn.prepareStatement("delete from message where message_id = ?")) {
                 ps.setInt(1, 1);
                 ps.executeUpdate();
         } catch (SQLException e) {
@@ -3,6 +3,7 @@ import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.util.List;
 
 import org.junit.After;
 import org.junit.Assert;
@@ -13,6 +14,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 
 import Controller.SocialMediaController;
 import Model.Message;
+import Model.MessageLookup;
 import Util.ConnectionUtil;
 import io.javalin.Javalin;
 
@@ -87,4 +89,69 @@ public class RetrieveMessageByMessageIdTest {
     }
 
 
+    /**
+     * Sending an http request to GET localhost:8080/messages?ids=100,1,1 (message id 100 does not exist)
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: message 1 twice, in the requested positions, and 100 listed as missing
+     */
+    @Test
+    public void getMessagesGivenMessageIds() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages?ids=100,1,1"))
+                .build();
+        HttpResponse response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        int status = response.statusCode();
+
+        Assert.assertEquals(200, status);
+
+        Message message = new Message(1, 1, "test message 1", 1669947792);
+        MessageLookup expectedResult = new MessageLookup(List.of(message, message), List.of(100));
+        MessageLookup actualResult = objectMapper.readValue(response.body().toString(), MessageLookup.class);
+        Assert.assertEquals(expectedResult.getMessages(), actualResult.getMessages());
+        Assert.assertEquals(expectedResult.getMissing_ids(), actualResult.getMissing_ids());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?ids=1,abc
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void getMessagesGivenMalformedMessageIds() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages?ids=1,abc"))
+                .build();
+        HttpResponse response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(400, response.statusCode());
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages, then to GET the new message with X-Read-Your-Writes
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON representation of the message just created
+     */
+    @Test
+    public void getMessageReadYourWrites() throws IOException, InterruptedException {
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"posted_by\":1, \"message_text\": \"fresh message\", \"time_posted_epoch\": 1669947800}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Message created = objectMapper.readValue(
+                webClient.send(postRequest, HttpResponse.BodyHandlers.ofString()).body(), Message.class);
+
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/" + created.getMessage_id()))
+                .header("X-Read-Your-Writes", "true")
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals(created, objectMapper.readValue(response.body(), Message.class));
+    }
 }
@@ -0,0 +1,172 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.MessageDAO;
+import Model.Message;
+import Model.MessagePage;
+import Util.ConnectionUtil;
+import Util.PageCursor;
+import io.javalin.Javalin;
+
+public class RetrieveMessagesPageTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web. A second message is posted so that listings span more than one page.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{"+
+                        "\"posted_by\":1, " +
+                        "\"message_text\": \"test message 2\", " +
+                        "\"time_posted_epoch\": 1669947700}"))
+                .header("Content-Type", "application/json")
+                .build();
+        webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?limit=1, then following next_cursor
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: one message per page in message_id order, and no next_cursor on the last page
+     */
+    @Test
+    public void getMessagesPageFollowCursor() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages?limit=1"))
+                .build();
+        HttpResponse response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+
+        MessagePage firstPage = objectMapper.readValue(response.body().toString(), MessagePage.class);
+        List<Message> expectedFirst = new ArrayList<>();
+        expectedFirst.add(new Message(1, 1, "test message 1", 1669947792));
+        Assert.assertEquals(expectedFirst, firstPage.getMessages());
+        Assert.assertNotNull(firstPage.getNext_cursor());
+
+        request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages?limit=1&after=" + firstPage.getNext_cursor()))
+                .build();
+        response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+
+        MessagePage secondPage = objectMapper.readValue(response.body().toString(), MessagePage.class);
+        List<Message> expectedSecond = new ArrayList<>();
+        expectedSecond.add(new Message(2, 1, "test message 2", 1669947700));
+        Assert.assertEquals(expectedSecond, secondPage.getMessages());
+        Assert.assertNull(secondPage.getNext_cursor());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/1/messages?limit=10&order_by=time_posted_epoch
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: both messages, oldest first, with no next_cursor
+     */
+    @Test
+    public void getMessagesPageForUserByTimePosted() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/1/messages?limit=10&order_by=time_posted_epoch"))
+                .build();
+        HttpResponse response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+
+        MessagePage page = objectMapper.readValue(response.body().toString(), MessagePage.class);
+        List<Message> expectedResult = new ArrayList<>();
+        expectedResult.add(new Message(2, 1, "test message 2", 1669947700));
+        expectedResult.add(new Message(1, 1, "test message 1", 1669947792));
+        Assert.assertEquals(expectedResult, page.getMessages());
+        Assert.assertNull(page.getNext_cursor());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages with a cursor the server never issued
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void getMessagesPageMalformedCursor() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages?limit=1&after=not-a-cursor"))
+                .build();
+        HttpResponse response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(400, response.statusCode());
+    }
+
+    /**
+     * Explaining a page deep into 10000 messages from two accounts, in each ordering, for all messages and for one
+     * account
+     *
+     * Expected Result:
+     *  Every page is read off the index matching its ordering, and H2 reads about limit rows to produce it rather
+     *  than the whole table or the whole account
+     */
+    @Test
+    public void getMessagesPageSeeksIndex() throws SQLException {
+        try (Connection conn = ConnectionUtil.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("INSERT INTO account (username, password) VALUES ('testuser2', 'password')");
+            // Ten messages share each timestamp, so the time-ordered seek has ties to step over
+            stmt.execute("INSERT INTO message (posted_by, message_text, time_posted_epoch) "
+                    + "SELECT MOD(x, 2) + 1, 'message ' || x, 1669947792 + x / 10 FROM SYSTEM_RANGE(1, 10000)");
+        }
+        int limit = 20;
+        PageCursor byId = PageCursor.after(PageCursor.Order.MESSAGE_ID, 0, 5000);
+        PageCursor byTime = PageCursor.after(PageCursor.Order.TIME_POSTED_EPOCH, 1669947792 + 500, 5000);
+
+        assertSeek(MessageDAO.explainMessagesAfter(0, null, byId, limit), "PRIMARY_KEY", limit);
+        assertSeek(MessageDAO.explainMessagesAfter(0, null, byTime, limit), "IDX_MESSAGE_TIME_POSTED", limit);
+        assertSeek(MessageDAO.explainMessagesAfter(0, 2, byId, limit), "IDX_MESSAGE_POSTED_BY_ID", limit);
+        assertSeek(MessageDAO.explainMessagesAfter(0, 2, byTime, limit), "IDX_MESSAGE_POSTED_BY_TIME_POSTED", limit);
+    }
+
+    private static void assertSeek(String plan, String index, int limit) {
+        Assert.assertNotNull(plan);
+        Assert.assertTrue(plan, plan.contains(index));
+        Matcher scanCount = Pattern.compile("scanCount: (\\d+)").matcher(plan);
+        Assert.assertTrue(plan, scanCount.find());
+        // The seek may step over the cursor's own timestamp ties, but never much more than one page
+        Assert.assertTrue(plan, Integer.parseInt(scanCount.group(1)) <= limit + 10);
+    }
+}
@@ -0,0 +1,126 @@
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.ConnectionUtil;
+import Util.SchemaMigrator;
+
+public class SchemaMigratorTest {
+
+    /**
+     * Before every test, empty the database so that every migration is new.
+     */
+    @Before
+    public void setUp() throws SQLException {
+        ConnectionUtil.resetTestDatabase();
+        try (Connection conn = ConnectionUtil.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP ALL OBJECTS");
+        }
+    }
+
+    /**
+     * Afterwards, put back the schema and seed data the other tests expect.
+     */
+    @After
+    public void tearDown() {
+        ConnectionUtil.resetTestDatabase();
+    }
+
+    /**
+     * Migrating an empty database
+     *
+     * Expected Result:
+     *  Every listed script runs once, in order, and is recorded; the later index migration replaced the earlier one
+     */
+    @Test
+    public void migrateAppliesScriptsInOrder() throws SQLException {
+        Assert.assertEquals(6, SchemaMigrator.migrate());
+
+        List<String> scripts = new ArrayList<>();
+        try (Connection conn = ConnectionUtil.getConnection(); Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT script FROM schema_version ORDER BY version")) {
+            while (rs.next()) {
+                scripts.add(rs.getString(1));
+            }
+        }
+        Assert.assertEquals(List.of(
+                "V1__create_account_and_message.sql",
+                "V2__index_message_posted_by.sql",
+                "V3__index_message_posted_by_time_posted.sql",
+                "V4__index_message_time_posted.sql",
+                "V5__create_follow.sql",
+                "V6__index_message_posted_by_id.sql"), scripts);
+
+        // V6 runs after V2, so the index V2 created is gone again
+        Assert.assertTrue(indexExists("IDX_MESSAGE_POSTED_BY_ID"));
+        Assert.assertFalse(indexExists("IDX_MESSAGE_POSTED_BY"));
+    }
+
+    /**
+     * Migrating an up-to-date database, then one that is missing the later scripts
+     *
+     * Expected Result:
+     *  The first run applies nothing and keeps the data; the second applies only the missing scripts
+     */
+    @Test
+    public void migrateRerunAppliesOnlyNewScripts() throws SQLException {
+        SchemaMigrator.migrate();
+        try (Connection conn = ConnectionUtil.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("INSERT INTO account (username, password) VALUES ('testuser1', 'password')");
+        }
+
+        Assert.assertEquals(0, SchemaMigrator.migrate());
+        Assert.assertEquals(1, count("SELECT COUNT(*) FROM account"));
+
+        try (Connection conn = ConnectionUtil.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("DELETE FROM schema_version WHERE version >= 4");
+        }
+        Assert.assertEquals(3, SchemaMigrator.migrate());
+        Assert.assertEquals(6, count("SELECT COUNT(*) FROM schema_version"));
+        Assert.assertEquals(1, count("SELECT COUNT(*) FROM account"));
+    }
+
+    /**
+     * Migrating a database whose record of an applied script has a different checksum, as after the script was
+     * edited
+     *
+     * Expected Result:
+     *  Migration fails naming the script, and nothing else is applied
+     */
+    @Test
+    public void migrateRejectsModifiedScript() throws SQLException {
+        SchemaMigrator.migrate();
+        try (Connection conn = ConnectionUtil.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("UPDATE schema_version SET checksum = checksum + 1 WHERE version = 3");
+            stmt.execute("DELETE FROM schema_version WHERE version = 6");
+        }
+
+        try {
+            SchemaMigrator.migrate();
+            Assert.fail("Expected the modified migration to be reported");
+        } catch (IllegalStateException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("V3__index_message_posted_by_time_posted.sql"));
+        }
+        Assert.assertEquals(5, count("SELECT COUNT(*) FROM schema_version"));
+    }
+
+    private static boolean indexExists(String name) throws SQLException {
+        return count("SELECT COUNT(*) FROM information_schema.indexes WHERE index_name = '" + name + "'") > 0;
+    }
+
+    private static int count(String sql) throws SQLException {
+        try (Connection conn = ConnectionUtil.getConnection(); Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import Model.Message;
+import Service.MessageService;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class SearchMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web. Two more messages are posted so that searches have something to tell apart.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+
+        HttpRequest postBatchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/batch"))
+                .POST(HttpRequest.BodyPublishers.ofString("[" +
+                        "{\"posted_by\":1, \"message_text\": \"Hello, World!\", \"time_posted_epoch\": 1669947800}, " +
+                        "{\"posted_by\":1, \"message_text\": \"hello there\", \"time_posted_epoch\": 1669947801}]"))
+                .header("Content-Type", "application/json")
+                .build();
+        webClient.send(postBatchRequest, HttpResponse.BodyHandlers.ofString());
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending http requests to GET localhost:8080/messages/search?q=hello and ?q=HELLO+wor*
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: both hello messages newest first, then only the one that also has a word starting with "wor"
+     */
+    @Test
+    public void searchMessagesByTermAndPrefix() throws IOException, InterruptedException {
+        List<Message> expectedResult = new ArrayList<>();
+        expectedResult.add(new Message(3, 1, "hello there", 1669947801));
+        expectedResult.add(new Message(2, 1, "Hello, World!", 1669947800));
+        Assert.assertEquals(expectedResult, search("hello"));
+
+        expectedResult.remove(0);
+        Assert.assertEquals(expectedResult, search("HELLO+wor*"));
+    }
+
+    /**
+     * Sending an http request to PATCH localhost:8080/messages/3, then searching for its old and new text
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the updated message is found by its new text and no longer by its old text
+     */
+    @Test
+    public void searchMessagesAfterUpdate() throws IOException, InterruptedException {
+        HttpRequest patchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/3"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"goodbye there\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        webClient.send(patchRequest, HttpResponse.BodyHandlers.ofString());
+
+        List<Message> expectedResult = new ArrayList<>();
+        expectedResult.add(new Message(3, 1, "goodbye there", 1669947801));
+        Assert.assertEquals(expectedResult, search("goodbye"));
+        Assert.assertEquals(new ArrayList<>(), search("hello+there"));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/search with nothing to search for
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void searchMessagesEmptyQuery() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/search?q=%21%21"))
+                .build();
+        HttpResponse response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(400, response.statusCode());
+    }
+
+    /**
+     * Starting a MessageService while the messages cannot be read
+     *
+     * Expected Result:
+     *  The constructor fails instead of serving searches from an empty or partial index
+     */
+    @Test
+    public void searchIndexLoadFailureFailsStartup() throws SQLException {
+        try (Connection conn = ConnectionUtil.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("ALTER TABLE message RENAME TO message_stored");
+        }
+        try {
+            new MessageService(new MessageDAO(), new AccountDAO());
+            Assert.fail("Expected the search index load to fail");
+        } catch (IllegalStateException e) {
+            Assert.assertTrue(e.getCause() instanceof IOException);
+        } finally {
+            try (Connection conn = ConnectionUtil.getConnection(); Statement stmt = conn.createStatement()) {
+                stmt.execute("ALTER TABLE message_stored RENAME TO message");
+            }
+        }
+    }
+
+    private List<Message> search(String query) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/search?q=" + query))
+                .build();
+        HttpResponse response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body().toString(), new TypeReference<List<Message>>() {});
+    }
+}
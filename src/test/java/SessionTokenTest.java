@@ -0,0 +1,188 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class SessionTokenTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient for interacting
+     * locally on the web. A second account is registered so there is someone else to impersonate.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+
+        HttpRequest registerRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/register"))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"username\": \"testuser2\", " +
+                        "\"password\": \"password\" }"))
+                .header("Content-Type", "application/json")
+                .build();
+        webClient.send(registerRequest, HttpResponse.BodyHandlers.ofString());
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Logging in as testuser1, then sending http requests to POST localhost:8080/messages with the returned token,
+     * once as testuser1 and once claiming to be testuser2
+     *
+     * Expected Response:
+     *  Status Code: 200 for the login, with a token in X-Auth-Token; 200 for the own message; 403 for the other
+     */
+    @Test
+    public void tokenAuthorizesOwnMessagesOnly() throws IOException, InterruptedException {
+        HttpRequest loginRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/login"))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"username\": \"testuser1\", " +
+                        "\"password\": \"password\" }"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> loginResponse = webClient.send(loginRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, loginResponse.statusCode());
+        String token = loginResponse.headers().firstValue("X-Auth-Token").orElse(null);
+        Assert.assertNotNull(token);
+
+        Assert.assertEquals(200, postMessage(token, 1).statusCode());
+        Assert.assertEquals(403, postMessage(token, 2).statusCode());
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages with a token that was not issued by the server
+     *
+     * Expected Response:
+     *  Status Code: 401
+     */
+    @Test
+    public void forgedTokenRejected() throws IOException, InterruptedException {
+        Assert.assertEquals(401, postMessage("AAAAAAAA.1.9999999999.forged", 1).statusCode());
+    }
+
+    /**
+     * Logging in as testuser2, then sending http requests to PATCH and DELETE localhost:8080/messages/1, which
+     * testuser1 posted, with testuser2's token; then the same as testuser1
+     *
+     * Expected Response:
+     *  Status Code: 403 for both of testuser2's requests, which change nothing; 200 for testuser1's, which edit and
+     *  then delete the message; 200 with an empty body for deleting it again
+     */
+    @Test
+    public void tokenChangesOwnMessagesOnly() throws IOException, InterruptedException {
+        String otherToken = login("testuser2");
+        Assert.assertEquals(403, send(patchMessage(1), otherToken).statusCode());
+        Assert.assertEquals(403, send(deleteMessage(1), otherToken).statusCode());
+        HttpResponse<String> unchanged = send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1")), null);
+        Assert.assertTrue(unchanged.body(), unchanged.body().contains("test message 1"));
+
+        String ownToken = login("testuser1");
+        HttpResponse<String> updated = send(patchMessage(1), ownToken);
+        Assert.assertEquals(200, updated.statusCode());
+        Assert.assertTrue(updated.body(), updated.body().contains("edited"));
+        HttpResponse<String> deleted = send(deleteMessage(1), ownToken);
+        Assert.assertEquals(200, deleted.statusCode());
+        Assert.assertTrue(deleted.body(), deleted.body().contains("edited"));
+
+        HttpResponse<String> deletedAgain = send(deleteMessage(1), ownToken);
+        Assert.assertEquals(200, deletedAgain.statusCode());
+        Assert.assertEquals("", deletedAgain.body());
+    }
+
+    /**
+     * With tokens required, sending http requests to PATCH and DELETE localhost:8080/messages/1 without a token
+     *
+     * Expected Response:
+     *  Status Code: 401 for both, and the message is unchanged
+     */
+    @Test
+    public void tokenRequiredToChangeMessages() throws IOException, InterruptedException {
+        app.stop();
+        System.setProperty("auth.tokens.required", "true");
+        try {
+            socialMediaController = new SocialMediaController();
+            app = socialMediaController.startAPI();
+            app.start(8080);
+            Thread.sleep(1000);
+
+            Assert.assertEquals(401, send(patchMessage(1), null).statusCode());
+            Assert.assertEquals(401, send(deleteMessage(1), null).statusCode());
+            HttpResponse<String> unchanged = send(HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages/1")), null);
+            Assert.assertTrue(unchanged.body(), unchanged.body().contains("test message 1"));
+        } finally {
+            System.clearProperty("auth.tokens.required");
+        }
+    }
+
+    private String login(String username) throws IOException, InterruptedException {
+        HttpRequest loginRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/login"))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"username\": \"" + username + "\", " +
+                        "\"password\": \"password\" }"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> loginResponse = webClient.send(loginRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, loginResponse.statusCode());
+        return loginResponse.headers().firstValue("X-Auth-Token").orElseThrow();
+    }
+
+    private static HttpRequest.Builder patchMessage(int messageId) {
+        return HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/" + messageId))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"edited\"}"))
+                .header("Content-Type", "application/json");
+    }
+
+    private static HttpRequest.Builder deleteMessage(int messageId) {
+        return HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/" + messageId))
+                .DELETE();
+    }
+
+    private HttpResponse<String> send(HttpRequest.Builder request, String token)
+            throws IOException, InterruptedException {
+        if (token != null) {
+            request.header("Authorization", "Bearer " + token);
+        }
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> postMessage(String token, int postedBy) throws IOException, InterruptedException {
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"posted_by\":" + postedBy + ", " +
+                        "\"message_text\": \"hello message\", " +
+                        "\"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .header("Authorization", "Bearer " + token)
+                .build();
+        return webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,320 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Model.MessageBatchResult;
+import Model.MessageLookup;
+import Model.MessagePage;
+import Util.ConnectionUtil;
+import Util.MessageShardRebalancer;
+import Util.MessageShards;
+import Util.SchemaMigrator;
+import io.javalin.Javalin;
+
+/**
+ * Runs in a JVM of its own, configured in pom.xml with messages split over two in-memory shards in four slots, since
+ * MessageShards reads its layout once per JVM.
+ */
+public class ShardedMessagesTest {
+    static final int ACCOUNT_COUNT = 8;
+
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+    /**
+     * Two authors whose messages are stored on different shards.
+     */
+    int author;
+    int otherAuthor;
+
+    /**
+     * Once, create the schema while the message table is still empty, which is the only time slots can be turned on.
+     */
+    @BeforeClass
+    public static void setUpShards() {
+        SchemaMigrator.migrate();
+        Assert.assertEquals(2, MessageShards.getShardCount());
+        Assert.assertEquals(4, MessageShards.getSlotCount());
+    }
+
+    /**
+     * Before every test, reset the database, drop its seed message, whose plain id is not in its author's slot, and
+     * add accounts until two of them are on different shards. Then restart the Javalin app, and create a new
+     * webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException, SQLException {
+        ConnectionUtil.resetTestDatabase();
+        try (Connection conn = ConnectionUtil.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("DELETE FROM message");
+            for (int i = 2; i <= ACCOUNT_COUNT; i++) {
+                stmt.execute("INSERT INTO account (username, password) VALUES ('testuser" + i + "', 'password')");
+            }
+        }
+        author = 1;
+        for (int i = 2; i <= ACCOUNT_COUNT && otherAuthor == 0; i++) {
+            if (MessageShards.shardOfAccount(i) != MessageShards.shardOfAccount(author)) {
+                otherAuthor = i;
+            }
+        }
+        Assert.assertNotEquals("Expected an account on each shard", 0, otherAuthor);
+
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending http requests to POST localhost:8080/messages and POST localhost:8080/messages/batch for two authors
+     * on different shards
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: each message with an id in its author's slot, and the row is stored on that shard only
+     */
+    @Test
+    public void createStoresMessagesOnAuthorsShard() throws IOException, InterruptedException, SQLException {
+        List<Message> created = new ArrayList<>();
+        created.add(createMessage(author, "single 1", 1669947800));
+        created.add(createMessage(otherAuthor, "single 2", 1669947801));
+
+        HttpRequest batchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/batch"))
+                .POST(HttpRequest.BodyPublishers.ofString("[" + messageJson(author, "batched 1", 1669947802) + ", "
+                        + messageJson(otherAuthor, "batched 2", 1669947803) + "]"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> batchResponse = webClient.send(batchRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, batchResponse.statusCode());
+        for (MessageBatchResult result : objectMapper.readValue(batchResponse.body(),
+                new TypeReference<List<MessageBatchResult>>() { })) {
+            Assert.assertEquals(200, result.getStatus());
+            created.add(result.getMessage());
+        }
+
+        for (Message message : created) {
+            int shard = MessageShards.shardOfAccount(message.getPosted_by());
+            Assert.assertEquals(shard, MessageShards.shardOfMessage(message.getMessage_id()));
+            Assert.assertEquals(1, countOn(shard, message.getMessage_id()));
+            Assert.assertEquals(0, countOn(1 - shard, message.getMessage_id()));
+        }
+    }
+
+    /**
+     * Sending http requests to GET localhost:8080/messages/{message_id}, GET localhost:8080/messages?ids=...,
+     * GET localhost:8080/accounts/{account_id}/messages and GET localhost:8080/messages with messages on both shards
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: each message found by id, each author's messages only, and every message in message_id order
+     */
+    @Test
+    public void readsFindMessagesOnEveryShard() throws IOException, InterruptedException {
+        Message first = createMessage(author, "first", 1669947800);
+        Message second = createMessage(otherAuthor, "second", 1669947801);
+        Message third = createMessage(author, "third", 1669947802);
+
+        Assert.assertEquals(second, objectMapper.readValue(get("/messages/" + second.getMessage_id()),
+                Message.class));
+        MessageLookup lookup = objectMapper.readValue(
+                get("/messages?ids=" + third.getMessage_id() + "," + second.getMessage_id()), MessageLookup.class);
+        Assert.assertEquals(List.of(third, second), lookup.getMessages());
+
+        Assert.assertEquals(List.of(first, third), getList("/accounts/" + author + "/messages"));
+        Assert.assertEquals(List.of(second), getList("/accounts/" + otherAuthor + "/messages"));
+        Assert.assertEquals(List.of(first, second, third), getList("/messages"));
+        Assert.assertEquals(List.of(first, second, third), getList("/messages?stream=true"));
+    }
+
+    /**
+     * Sending http requests to GET localhost:8080/messages?limit=2, with and without order_by=time_posted_epoch, and
+     * to GET localhost:8080/accounts/{account_id}/messages?limit=1, following next_cursor each time
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: pages that together hold every matching message once, merged across shards in order
+     */
+    @Test
+    public void pagesMergeShardsInOrder() throws IOException, InterruptedException {
+        List<Message> byId = new ArrayList<>();
+        List<Message> byAuthor = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            // Posted newest first, so time order is the reverse of id order
+            Message message = createMessage(i % 2 == 0 ? author : otherAuthor, "message " + i, 1669947900 - i);
+            byId.add(message);
+            if (message.getPosted_by() == author) {
+                byAuthor.add(message);
+            }
+        }
+        List<Message> byTime = new ArrayList<>(byId);
+        Collections.reverse(byTime);
+
+        Assert.assertEquals(byId, getAllPages("/messages?limit=2"));
+        Assert.assertEquals(byTime, getAllPages("/messages?limit=2&order_by=time_posted_epoch"));
+        Assert.assertEquals(byAuthor, getAllPages("/accounts/" + author + "/messages?limit=1"));
+    }
+
+    /**
+     * Sending http requests to PATCH and then DELETE localhost:8080/messages/{message_id} for a message on each shard
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the updated, then the deleted message; the row is changed, then gone, on its shard
+     */
+    @Test
+    public void updateAndDeleteReachAuthorsShard() throws IOException, InterruptedException, SQLException {
+        for (int postedBy : new int[] {author, otherAuthor}) {
+            Message message = createMessage(postedBy, "original", 1669947800);
+            int shard = MessageShards.shardOfAccount(postedBy);
+
+            HttpRequest patchRequest = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages/" + message.getMessage_id()))
+                    .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"edited\"}"))
+                    .header("Content-Type", "application/json")
+                    .build();
+            HttpResponse<String> patchResponse = webClient.send(patchRequest, HttpResponse.BodyHandlers.ofString());
+            Assert.assertEquals(200, patchResponse.statusCode());
+            Assert.assertEquals("edited", objectMapper.readValue(patchResponse.body(), Message.class)
+                    .getMessage_text());
+            Assert.assertEquals("edited", textOn(shard, message.getMessage_id()));
+
+            HttpRequest deleteRequest = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages/" + message.getMessage_id()))
+                    .DELETE()
+                    .build();
+            HttpResponse<String> deleteResponse = webClient.send(deleteRequest, HttpResponse.BodyHandlers.ofString());
+            Assert.assertEquals(200, deleteResponse.statusCode());
+            Assert.assertEquals(message.getMessage_id(), objectMapper.readValue(deleteResponse.body(), Message.class)
+                    .getMessage_id());
+            Assert.assertEquals(0, countOn(shard, message.getMessage_id()));
+            Assert.assertEquals("", get("/messages/" + message.getMessage_id()));
+        }
+    }
+
+    /**
+     * Moving one author's slot to the other shard with MessageShardRebalancer, then reading
+     *
+     * Expected Result:
+     *  The author's rows are on the new shard only, the other author's stay put, and every read still finds them
+     */
+    @Test
+    public void rebalanceMovesSlotAndKeepsMessagesReachable() throws IOException, InterruptedException, SQLException {
+        Message first = createMessage(author, "first", 1669947800);
+        Message second = createMessage(otherAuthor, "second", 1669947801);
+        Message third = createMessage(author, "third", 1669947802);
+        int slot = MessageShards.slotOfAccount(author);
+        int from = MessageShards.shardOfAccount(author);
+        int to = 1 - from;
+
+        try {
+            MessageShardRebalancer.main(new String[] {Integer.toString(slot), Integer.toString(to)});
+
+            Assert.assertEquals(to, MessageShards.shardOfAccount(author));
+            for (Message message : List.of(first, third)) {
+                Assert.assertEquals(0, countOn(from, message.getMessage_id()));
+                Assert.assertEquals(1, countOn(to, message.getMessage_id()));
+                Assert.assertEquals(message, objectMapper.readValue(get("/messages/" + message.getMessage_id()),
+                        Message.class));
+            }
+            Assert.assertEquals(1, countOn(MessageShards.shardOfAccount(otherAuthor), second.getMessage_id()));
+            Assert.assertEquals(List.of(first, third), getList("/accounts/" + author + "/messages"));
+            Assert.assertEquals(List.of(first, second, third), getList("/messages"));
+        } finally {
+            // The slot table outlives the test, so put the slot back for the tests that follow
+            MessageShardRebalancer.main(new String[] {Integer.toString(slot), Integer.toString(from)});
+        }
+    }
+
+    private static String messageJson(int postedBy, String text, long timePosted) {
+        return "{\"posted_by\":" + postedBy + ", \"message_text\": \"" + text + "\", \"time_posted_epoch\": "
+                + timePosted + "}";
+    }
+
+    private Message createMessage(int postedBy, String text, long timePosted)
+            throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(messageJson(postedBy, text, timePosted)))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), Message.class);
+    }
+
+    private String get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        return response.body();
+    }
+
+    private List<Message> getList(String path) throws IOException, InterruptedException {
+        return objectMapper.readValue(get(path), new TypeReference<List<Message>>() { });
+    }
+
+    private List<Message> getAllPages(String path) throws IOException, InterruptedException {
+        List<Message> messages = new ArrayList<>();
+        MessagePage page = objectMapper.readValue(get(path), MessagePage.class);
+        messages.addAll(page.getMessages());
+        while (page.getNext_cursor() != null) {
+            page = objectMapper.readValue(get(path + "&after=" + page.getNext_cursor()), MessagePage.class);
+            messages.addAll(page.getMessages());
+        }
+        return messages;
+    }
+
+    private static int countOn(int shard, int messageId) throws SQLException {
+        try (Connection conn = MessageShards.getConnection(shard);
+             PreparedStatement stmt = conn.prepareStatement("SELECT COUNT(*) FROM message WHERE message_id = ?")) {
+            stmt.setInt(1, messageId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    private static String textOn(int shard, int messageId) throws SQLException {
+        try (Connection conn = MessageShards.getConnection(shard);
+             PreparedStatement stmt = conn.prepareStatement("SELECT message_text FROM message WHERE message_id = ?")) {
+            stmt.setInt(1, messageId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.ConnectionPool;
+
+public class StatementCacheTest {
+    private static final String SELECT = "SELECT id FROM item WHERE id = ?";
+    private static final String COUNT = "SELECT COUNT(*) FROM item WHERE id > ?";
+
+    JdbcDataSource dataSource;
+
+    /**
+     * Before every test, point a DataSource at a fresh in-memory database holding rows 1 to 3. StatementCache is
+     * package-private, so the tests reach it through ConnectionPool and read its counters from the pool.
+     */
+    @Before
+    public void setUp() throws SQLException {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:statementcachetest;DB_CLOSE_DELAY=-1");
+        dataSource.setUser("sa");
+        dataSource.setPassword("sa");
+        try (Connection conn = dataSource.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS item (id int primary key)");
+            stmt.execute("DELETE FROM item");
+            stmt.execute("INSERT INTO item (id) VALUES (1), (2), (3)");
+        }
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        try (Connection conn = dataSource.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP TABLE item");
+        }
+    }
+
+    /**
+     * Preparing the same SQL twice on one borrowed connection, closing it in between
+     *
+     * Expected Result:
+     *  The second prepare is a hit, and gets the statement back with the first caller's parameters cleared
+     */
+    @Test
+    public void samePreparedStatementIsReused() throws SQLException {
+        ConnectionPool pool = new ConnectionPool(dataSource, 1, 1000, 600_000, 4);
+        try (Connection conn = pool.borrow()) {
+            try (PreparedStatement stmt = conn.prepareStatement(SELECT)) {
+                stmt.setInt(1, 2);
+                Assert.assertEquals(2, single(stmt));
+            }
+            try (PreparedStatement stmt = conn.prepareStatement(SELECT)) {
+                try {
+                    stmt.executeQuery();
+                    Assert.fail("Expected the previous caller's parameter to have been cleared");
+                } catch (SQLException e) {
+                    // expected: parameter 1 is not set
+                }
+                stmt.setInt(1, 3);
+                Assert.assertEquals(3, single(stmt));
+                Assert.assertSame(conn, stmt.getConnection());
+            }
+        }
+        Assert.assertEquals(1, pool.getStatementMissCount());
+        Assert.assertEquals(1, pool.getStatementHitCount());
+    }
+
+    /**
+     * Evicting a statement from a cache of one while its caller is still using it
+     *
+     * Expected Result:
+     *  The caller can keep using it; once closed it is not handed out again, so the next prepare is a miss
+     */
+    @Test
+    public void evictedStatementInUseStaysOpen() throws SQLException {
+        ConnectionPool pool = new ConnectionPool(dataSource, 1, 1000, 600_000, 1);
+        try (Connection conn = pool.borrow()) {
+            PreparedStatement inUse = conn.prepareStatement(SELECT);
+            try (PreparedStatement other = conn.prepareStatement(COUNT)) {
+                other.setInt(1, 0);
+                Assert.assertEquals(3, single(other));
+            }
+            Assert.assertEquals(1, pool.getStatementEvictionCount());
+
+            inUse.setInt(1, 1);
+            Assert.assertEquals(1, single(inUse));
+            inUse.close();
+            Assert.assertTrue(inUse.isClosed());
+
+            try (PreparedStatement again = conn.prepareStatement(SELECT)) {
+                again.setInt(1, 2);
+                Assert.assertEquals(2, single(again));
+            }
+        }
+        Assert.assertEquals(3, pool.getStatementMissCount());
+        Assert.assertEquals(0, pool.getStatementHitCount());
+    }
+
+    /**
+     * Preparing the same SQL a second time while the first statement is still open
+     *
+     * Expected Result:
+     *  The second caller gets a statement of its own, so neither sees the other's parameters or results; the cached
+     *  one is reused once it is handed back
+     */
+    @Test
+    public void sameSqlInUseIsNotShared() throws SQLException {
+        ConnectionPool pool = new ConnectionPool(dataSource, 1, 1000, 600_000, 4);
+        try (Connection conn = pool.borrow()) {
+            try (PreparedStatement first = conn.prepareStatement(SELECT);
+                 PreparedStatement second = conn.prepareStatement(SELECT)) {
+                first.setInt(1, 1);
+                second.setInt(1, 3);
+                try (ResultSet outer = first.executeQuery()) {
+                    Assert.assertTrue(outer.next());
+                    Assert.assertEquals(3, single(second));
+                    Assert.assertEquals(1, outer.getInt(1));
+                }
+            }
+            Assert.assertEquals(2, pool.getStatementMissCount());
+
+            try (PreparedStatement stmt = conn.prepareStatement(SELECT)) {
+                stmt.setInt(1, 2);
+                Assert.assertEquals(2, single(stmt));
+            }
+        }
+        Assert.assertEquals(1, pool.getStatementHitCount());
+    }
+
+    /**
+     * Returning a connection to the pool without closing a statement prepared on it, then borrowing it again
+     *
+     * Expected Result:
+     *  The forgotten statement is handed back on return: the stale reference reads as closed and rejects use, and
+     *  the next borrower's prepare is a hit
+     */
+    @Test
+    public void returnReleasesForgottenStatements() throws SQLException {
+        ConnectionPool pool = new ConnectionPool(dataSource, 1, 1000, 600_000, 4);
+        PreparedStatement forgotten;
+        try (Connection conn = pool.borrow()) {
+            forgotten = conn.prepareStatement(SELECT);
+            forgotten.setInt(1, 1);
+            Assert.assertEquals(1, single(forgotten));
+        }
+
+        Assert.assertTrue(forgotten.isClosed());
+        try {
+            forgotten.executeQuery();
+            Assert.fail("Expected a statement released with its connection to reject use");
+        } catch (SQLException e) {
+            // expected
+        }
+
+        try (Connection conn = pool.borrow(); PreparedStatement stmt = conn.prepareStatement(SELECT)) {
+            stmt.setInt(1, 3);
+            Assert.assertEquals(3, single(stmt));
+        }
+        Assert.assertEquals(1, pool.getCreatedCount());
+        Assert.assertEquals(1, pool.getStatementHitCount());
+    }
+
+    private static int single(PreparedStatement stmt) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery()) {
+            Assert.assertTrue(rs.next());
+            return rs.getInt(1);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class TimelineTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web. A second account is registered to follow the first.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+
+        HttpRequest registerRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/register"))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"username\": \"testuser2\", " +
+                        "\"password\": \"password\" }"))
+                .header("Content-Type", "application/json")
+                .build();
+        webClient.send(registerRequest, HttpResponse.BodyHandlers.ofString());
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Account 2 follows account 1, reads its timeline, then account 1 posts a new message
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: first account 1's existing message, then the new message ahead of it
+     */
+    @Test
+    public void followThenTimelineIncludesNewMessages() throws IOException, InterruptedException {
+        Assert.assertEquals(200, send("POST", "/accounts/2/following/1").statusCode());
+
+        List<Message> expectedResult = new ArrayList<>();
+        expectedResult.add(new Message(1, 1, "test message 1", 1669947792));
+        Assert.assertEquals(expectedResult, getTimeline(2));
+
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"posted_by\":1, " +
+                        "\"message_text\": \"test message 2\", " +
+                        "\"time_posted_epoch\": 1669947800}"))
+                .header("Content-Type", "application/json")
+                .build();
+        webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+
+        expectedResult.add(0, new Message(2, 1, "test message 2", 1669947800));
+        Assert.assertEquals(expectedResult, getTimeline(2));
+        Assert.assertEquals(new ArrayList<>(), getTimeline(1));
+    }
+
+    /**
+     * Account 2 follows then unfollows account 1, and tries to follow an account that does not exist
+     *
+     * Expected Response:
+     *  Status Code: 200 for the unfollow and 400 for the unknown account
+     *  Response Body: an empty timeline after unfollowing
+     */
+    @Test
+    public void unfollowThenTimelineEmpty() throws IOException, InterruptedException {
+        send("POST", "/accounts/2/following/1");
+        getTimeline(2);
+        Assert.assertEquals(200, send("DELETE", "/accounts/2/following/1").statusCode());
+        Assert.assertEquals(new ArrayList<>(), getTimeline(2));
+
+        Assert.assertEquals(400, send("POST", "/accounts/2/following/99").statusCode());
+    }
+
+    private HttpResponse send(String method, String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .method(method, HttpRequest.BodyPublishers.noBody())
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private List<Message> getTimeline(int accountId) throws IOException, InterruptedException {
+        HttpResponse response = send("GET", "/accounts/" + accountId + "/timeline");
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body().toString(), new TypeReference<List<Message>>() {});
+    }
+}
@@ -71,6 +71,38 @@ public class UpdateMessageTextTest {
         Assert.assertEquals(expectedResult, actualResult);
     }
 
+    /**
+     * Sending an http request to GET localhost:8080/messages/1, then PATCH it, then GET it again
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON representation of the updated message, not the copy cached by the first GET
+     */
+    @Test
+    public void updateMessageThenRetrieveUpdatedMessage() throws IOException, InterruptedException {
+        HttpRequest getRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .build();
+        webClient.send(getRequest, HttpResponse.BodyHandlers.ofString());
+
+        HttpRequest patchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{"+
+                        "\"message_text\": \"updated message\" }"))
+                .header("Content-Type", "application/json")
+                .build();
+        webClient.send(patchRequest, HttpResponse.BodyHandlers.ofString());
+
+        HttpResponse response = webClient.send(getRequest, HttpResponse.BodyHandlers.ofString());
+        int status = response.statusCode();
+
+        Assert.assertEquals(200, status);
+
+        Message expectedResult = new Message(1, 1, "updated message", 1669947792);
+        Message actualResult = objectMapper.readValue(response.body().toString(), Message.class);
+        Assert.assertEquals(expectedResult, actualResult);
+    }
+
 
     /**
      * Sending an http request to PATCH localhost:8080/messages/1 (message id does NOT exist in db) 
@@ -119,4 +119,37 @@ public class UserLoginTest {
         Assert.assertEquals("", response.body().toString());
 
     }
+
+    /**
+     * Sending http requests to POST localhost:8080/login repeatedly: twice for the seeded account, whose plaintext
+     * password is re-hashed by the first login, and then with a wrong password after those successful logins
+     *
+     * Expected Response:
+     *  Status Code: 200 both times with the right password, 401 with the wrong one
+     *  Response Body: JSON representation of user object, carrying the password as sent
+     */
+    @Test
+    public void loginRepeatedThenInvalidPassword() throws IOException, InterruptedException {
+        Account expectedResult = new Account(1, "testuser1", "password");
+        for (int i = 0; i < 2; i++) {
+            HttpResponse response = login("testuser1", "password");
+            Assert.assertEquals(200, response.statusCode());
+            Assert.assertEquals(expectedResult, objectMapper.readValue(response.body().toString(), Account.class));
+        }
+
+        HttpResponse response = login("testuser1", "pass123");
+        Assert.assertEquals(401, response.statusCode());
+        Assert.assertEquals("", response.body().toString());
+    }
+
+    private HttpResponse login(String username, String password) throws IOException, InterruptedException {
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/login"))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"username\": \"" + username + "\", " +
+                        "\"password\": \"" + password + "\" }"))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(postRequest, HttpResponse.BodyHandlers.ofString());
+    }
 }
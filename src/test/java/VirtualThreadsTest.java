@@ -0,0 +1,131 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConcurrencyLimiter;
+import Util.ConnectionPool;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class VirtualThreadsTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app in virtual-thread mode with a single request
+     * slot that is given up on after 200ms, and create a new webClient for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        System.setProperty("server.virtualThreads", "true");
+        System.setProperty("server.maxConcurrentRequests", "1");
+        System.setProperty("server.requestQueueTimeoutMillis", "200");
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("server.virtualThreads");
+        System.clearProperty("server.maxConcurrentRequests");
+        System.clearProperty("server.requestQueueTimeoutMillis");
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/1 while the only request slot is taken, then again once
+     * it is free
+     *
+     * Expected Response:
+     *  Status Code: 503 while the slot is taken, counted as rejected; 200 once it is free
+     */
+    @Test
+    public void requestWithoutSlotIsRejected() throws IOException, InterruptedException {
+        ConcurrencyLimiter limiter = socialMediaController.getRequestLimiter();
+        Assert.assertNotNull(limiter);
+        Assert.assertEquals(1, limiter.getMaxConcurrent());
+
+        Assert.assertTrue(limiter.tryAcquire());
+        try {
+            Assert.assertEquals(503, getMessage().statusCode());
+            Assert.assertEquals(1, limiter.getRejectedCount());
+        } finally {
+            limiter.release();
+        }
+        Assert.assertEquals(200, getMessage().statusCode());
+        awaitNoneInFlight(limiter);
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/1 that is stuck waiting for a database connection, and a
+     * second request while it waits
+     *
+     * Expected Response:
+     *  The first request keeps its slot until its database work is done, even though its handler returned as soon as
+     *  it queued that work, so the second is answered with 503; the first then succeeds with 200
+     */
+    @Test
+    public void slotIsHeldUntilDatabaseWorkCompletes() throws IOException, InterruptedException, SQLException {
+        ConcurrencyLimiter limiter = socialMediaController.getRequestLimiter();
+        ConnectionPool pool = ConnectionUtil.getPool();
+        List<Connection> held = new ArrayList<>();
+        CompletableFuture<HttpResponse<String>> first;
+        try {
+            while (held.size() < pool.getMaxSize()) {
+                held.add(ConnectionUtil.getConnection());
+            }
+            first = webClient.sendAsync(request(), HttpResponse.BodyHandlers.ofString());
+            long deadline = System.currentTimeMillis() + 5000;
+            while (pool.getWaiterCount() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals(1, limiter.getInFlightCount());
+
+            Assert.assertEquals(503, getMessage().statusCode());
+        } finally {
+            for (Connection conn : held) {
+                conn.close();
+            }
+        }
+        Assert.assertEquals(200, first.join().statusCode());
+        awaitNoneInFlight(limiter);
+    }
+
+    private static void awaitNoneInFlight(ConcurrencyLimiter limiter) throws InterruptedException {
+        // The slot is freed when the database work completes, which may be just after the response went out
+        long deadline = System.currentTimeMillis() + 5000;
+        while (limiter.getInFlightCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(0, limiter.getInFlightCount());
+    }
+
+    private HttpRequest request() {
+        return HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .build();
+    }
+
+    private HttpResponse<String> getMessage() throws IOException, InterruptedException {
+        return webClient.send(request(), HttpResponse.BodyHandlers.ofString());
+    }
+}